@@ -1,7 +1,20 @@
 package tablut;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static java.lang.Math.*;
 import static tablut.Piece.*;
+import static tablut.TranspositionTable.*;
 
 /**
  * A Player that automatically generates moves.
@@ -19,11 +32,38 @@ class AI extends Player {
      * A position-score magnitude indicating a forced win in a subsequent
      * move.  This differs from WINNING_VALUE to avoid putting off wins.
      */
-    private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+    static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
     /**
      * A magnitude greater than a normal value.
      */
     private static final int INFTY = Integer.MAX_VALUE;
+    /**
+     * Default log2 of the number of entries in the transposition table
+     * (see Controller.tableLogSize).
+     */
+    static final int TABLE_LOG_SIZE = 20;
+    /**
+     * Deepest search attempted when moves have a time budget.
+     */
+    private static final int MAX_DEPTH = 32;
+    /**
+     * The clock is checked once every this many nodes (less 1; a power of
+     * 2 less 1, used as a mask).
+     */
+    private static final int CLOCK_INTERVAL = (1 << 8) - 1;
+    /**
+     * Half the width of the window around the previous depth's value
+     * within which each depth is first searched.
+     */
+    private static final int ASPIRATION_WINDOW = 30;
+    /**
+     * Most nodes searched by quiesce below each leaf of the main search.
+     */
+    static final int QUIESCENCE_NODES = 64;
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000;
 
     /**
      * A new AI with no piece or controller (intended to produce
@@ -48,7 +88,7 @@ class AI extends Player {
     @Override
     String myMove() {
         /** FIXME */
-        String movecommand = findMove().toString();
+        String movecommand = computeMove().toString();
         _controller.reportMove(_lastFoundMove);
         return movecommand;
     }
@@ -58,85 +98,909 @@ class AI extends Player {
         return false;
     }
 
+    @Override
+    void moveMade(Move move) {
+        Move predicted = _prediction;
+        stopPondering();
+        if (predicted != null && move != null) {
+            _controller.logComment("%s: predicted %s, %s", myPiece().toName(),
+                                   predicted, move == predicted ? "hit"
+                                   : "missed");
+        }
+        if (move != null && _controller.pondering()
+            && board().winner() == null && board().turn() != myPiece()) {
+            startPondering();
+        }
+    }
+
+    @Override
+    void stop() {
+        stopPondering();
+        if (_pool != null) {
+            _pool.shutdown();
+            _pool = null;
+            _workers = null;
+        }
+    }
+
+    /**
+     * Return findMove(), computed on my controller's compute pool if it
+     * has one.  The calling thread (which may be one of many virtual
+     * threads serving games) then just waits, so that a long search does
+     * not occupy a thread that others need for input and output.
+     */
+    private Move computeMove() {
+        ExecutorService pool = _controller.computePool();
+        if (pool == null) {
+            return findMove();
+        }
+        try {
+            return pool.submit(() -> findMove()).get();
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException("search failed", excp);
+        }
+    }
+
     /**
      * Return a move for me from the current position, assuming there
      * is a move.
      */
     private Move findMove() {
         /** FIXME */
-        Board b = new Board(board());
-        _lastFoundMove = null;
-        findMove(b, maxDepth(b), true,
-                b.turn() == WHITE ? 1 : -1, -INFTY, INFTY);
+        stopPondering();
+        Move stored = storedMove(board());
+        if (stored != null) {
+            _controller.logComment("%s: stored move", myPiece().toName());
+            _lastFoundMove = stored;
+            return stored;
+        }
+        return findMove(board());
+    }
+
+    /**
+     * Return a move for me from POSITION, found by searching it, assuming
+     * there is a move.
+     */
+    Move findMove(Board position) {
+        _searchBoard.copy(position);
+        return searchPosition(_searchBoard, false);
+    }
+
+    /**
+     * Return the move recorded for BOARD in my controller's opening book
+     * or endgame cache, or null if there is none or if it fails the check
+     * in holds.
+     */
+    Move storedMove(Board board) {
+        long key = board.positionKey();
+        OpeningBook book = _controller.openingBook();
+        EndgameCache endgames = _controller.endgameCache();
+        int index = NO_MOVE;
+        if (book != null) {
+            index = book.find(key);
+        }
+        if (index == NO_MOVE && endgames != null) {
+            index = endgames.find(key);
+        }
+        Move move = index == NO_MOVE ? null : Move.mv(index);
+        return move != null && board.isLegal(move) && holds(board, move)
+            ? move : null;
+    }
+
+    /**
+     * Return true iff the legal MOVE on BOARD neither loses at once nor
+     * allows a reply that does: a shallow check that a stored move, which
+     * was recorded for the same arrangement of pieces in another game,
+     * still makes sense in this one (whose move limit, for example, may
+     * differ).
+     */
+    private boolean holds(Board board, Move move) {
+        Piece opponent = board.turn().opponent();
+        Board b = _searchBoard;
+        b.copy(board);
+        b.makeMove(move);
+        if (b.winner() != null) {
+            return b.winner() != opponent;
+        }
+        int[] replies = moveBuffer(0);
+        int n = b.legalMoves(b.turn(), replies);
+        for (int i = 0; i < n; i += 1) {
+            b.makeMove(replies[i]);
+            Piece winner = b.winner();
+            b.undo();
+            if (winner == opponent) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start searching, on a background thread (from my controller's
+     * compute pool, if it has one), the position that would result from
+     * the reply to my last move that my previous search expected, so that
+     * the transposition table is already filled with results for that
+     * position if my opponent makes that reply.  Does nothing if I have
+     * no prediction.
+     */
+    private void startPondering() {
+        Board b = _searchBoard;
+        b.copy(board());
+        if (_table == null) {
+            return;
+        }
+        int reply = move(_table.probe(b.positionKey()));
+        if (reply == NO_MOVE || !b.isLegal(Move.mv(reply))) {
+            return;
+        }
+        b.makeMove(Move.mv(reply));
+        if (b.winner() != null) {
+            return;
+        }
+        _prediction = Move.mv(reply);
+        _stop = false;
+        AtomicBoolean claimed = new AtomicBoolean();
+        Runnable search = () -> {
+            if (claimed.compareAndSet(false, true)) {
+                searchPosition(b, true);
+            }
+        };
+        ExecutorService pool = _controller.computePool();
+        if (pool != null) {
+            _ponderer = pool.submit(search);
+        } else {
+            FutureTask<?> task = new FutureTask<>(search, null);
+            Thread thread = new Thread(task, "ponder");
+            thread.setDaemon(true);
+            thread.start();
+            _ponderer = task;
+        }
+        _ponderClaimed = claimed;
+    }
+
+    /**
+     * Stop any search started by startPondering and wait for it to
+     * finish, then write its report (see _ponderReport) to the log.
+     */
+    private void stopPondering() {
+        if (_ponderer != null) {
+            _stop = true;
+            if (_ponderClaimed.compareAndSet(false, true)) {
+                _ponderer.cancel(false);
+            } else {
+                try {
+                    _ponderer.get();
+                } catch (InterruptedException excp) {
+                    throw new Error("unexpected interrupt");
+                } catch (ExecutionException excp) {
+                    throw new IllegalStateException("pondering failed",
+                                                    excp);
+                }
+            }
+            _ponderer = null;
+            _stop = false;
+            if (_ponderReport != null) {
+                _controller.logComment("%s", _ponderReport);
+                _ponderReport = null;
+            }
+        }
+        _prediction = null;
+    }
+
+    /**
+     * Return the opponent's reply that I am pondering, or null if I am
+     * not pondering.
+     */
+    Move prediction() {
+        return _prediction;
+    }
+
+    /**
+     * Return a move for me from position B, assuming there is a move.
+     * Searches to depths 1, 2, ... in turn, until the next depth would
+     * exceed my controller's time budget for my moves (or, without a
+     * budget, until maxDepth), and returns the best move from the deepest
+     * search that finished.  When PONDERING, there is no budget and the
+     * search continues until stopped, unless it is running on my
+     * controller's compute pool, where it has the usual budget so that
+     * it cannot hold one of the pool's threads indefinitely.  Otherwise,
+     * if it finds a win and my controller has an endgame cache, records
+     * the winning move there, provided that the win does not depend on
+     * the move limit or the history of the game (see _historyDependent).
+     * When my controller asks for more than one search thread, each depth
+     * is searched by searchParallel.
+     */
+    private Move searchPosition(Board b, boolean pondering) {
+        startSearch(b);
+        long probes = _table.probes(), hits = _table.hits();
+        int threads = _controller.searchThreads();
+        if (threads > 1) {
+            setUpWorkers(threads, _controller.sharedTable());
+        }
+        int sense = b.turn() == WHITE ? 1 : -1;
+        boolean unbounded = pondering && _controller.computePool() == null;
+        long budget = unbounded ? 0
+            : _controller.moveTime(myPiece()) * NANOS_PER_MILLI;
+        long start = System.nanoTime();
+        int limit = budget > 0 || unbounded ? MAX_DEPTH : maxDepth(b);
+        Move best = null;
+        int depth;
+        int value = 0;
+        for (depth = 1; depth <= limit; depth += 1) {
+            _lastFoundMove = null;
+            value = threads > 1 ? searchParallel(b, depth, sense)
+                : aspirationSearch(b, depth, sense, value);
+            if (_aborted) {
+                break;
+            }
+            best = _lastFoundMove;
+            if (abs(value) >= WILL_WIN_VALUE) {
+                depth += 1;
+                break;
+            }
+            if (budget > 0) {
+                long elapsed = System.nanoTime() - start;
+                if (2 * elapsed > budget) {
+                    depth += 1;
+                    break;
+                }
+                _deadline = start + budget;
+            }
+        }
+        _lastFoundMove = best;
+        EndgameCache endgames = _controller.endgameCache();
+        if (!pondering && endgames != null && best != null
+            && sense * value >= WILL_WIN_VALUE && !_historyDependent) {
+            endgames.record(b, best.index());
+        }
+        long elapsed = System.nanoTime() - start;
+        _stats.finish(_nodes, depth - 1, elapsed, _table.probes() - probes,
+                      _table.hits() - hits);
+        if (!pondering) {
+            _controller.moveStats(myPiece()).add(_nodes, elapsed);
+            _stats.publish();
+            if (_controller.reportingStats()) {
+                _controller.reportNote("%s: %s", myPiece().toName(), _stats);
+            }
+        }
+        if (_controller.logging()) {
+            String report =
+                String.format("%s%s: depth %d, %d nodes in %d ms;"
+                              + " table %d probes, %.1f%% hits,"
+                              + " %d stores; branching %.2f,"
+                              + " %.1f%% first-move cutoffs",
+                              myPiece().toName(),
+                              pondering ? " (pondering)" : "",
+                              depth - 1, _nodes, elapsed / NANOS_PER_MILLI,
+                              _table.probes(), 100.0 * _table.hitRate(),
+                              _table.stores(), _ordering.branchingFactor(),
+                              100.0 * _ordering.firstMoveCutoffRate());
+            if (pondering) {
+                _ponderReport = report;
+            } else {
+                _controller.logComment("%s", report);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Prepare to search from position B, with no deadline.
+     */
+    private void startSearch(Board b) {
+        if (_table == null) {
+            _table = new TranspositionTable(_controller.tableLogSize());
+            _historyDependent = false;
+        }
+        if (b.moveLimit() != Integer.MAX_VALUE) {
+            _historyDependent = true;
+        } else if (_historyDependent && _controller.endgameCache() != null) {
+            _table.clear();
+            if (_workers != null) {
+                for (AI worker : _workers) {
+                    worker._table.clear();
+                }
+            }
+            _historyDependent = false;
+        }
+        _table.newSearch();
+        _ordering.newSearch();
+        _rootMoveCount = b.moveCount();
+        _evaluator = _controller.evaluator(myPiece());
+        if (_stats == null) {
+            _stats = new SearchStats(_controller.metrics(),
+                                     myPiece().toName().toLowerCase());
+        }
+        _stats.reset();
+        _deadline = Long.MAX_VALUE;
+        _aborted = false;
+        _nodes = 0;
+    }
+
+    /**
+     * Search POSITION on one thread to depths 1 .. DEPTH in turn (stopping
+     * early at a forced win), with no time limit and starting from an
+     * empty transposition table, and return the value of the last depth
+     * searched.  lastFoundMove() is then the best move found.
+     */
+    int searchToDepth(Board position, int depth) {
+        Board b = _searchBoard;
+        b.copy(position);
+        startSearch(b);
+        _table.clear();
+        _historyDependent = b.moveLimit() != Integer.MAX_VALUE;
+        int sense = b.turn() == WHITE ? 1 : -1;
+        int value = 0;
+        for (int d = 1; d <= depth; d += 1) {
+            _lastFoundMove = null;
+            value = aspirationSearch(b, d, sense, value);
+            if (abs(value) >= WILL_WIN_VALUE) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Return the value that the quiescence search at the leaves of my
+     * searches gives POSITION, with the full window, when it may expand
+     * at most NODES nodes.
+     */
+    int quiescentValue(Board position, int nodes) {
+        Board b = _searchBoard;
+        b.copy(position);
+        startSearch(b);
+        _quiescenceLeft = nodes;
+        return quiesce(b, b.turn() == WHITE ? 1 : -1, -INFTY, INFTY);
+    }
+
+    /**
+     * Search every move with the full window, without aspiration windows
+     * or null-window scouts, iff PLAIN.  Plain searches are slower; they
+     * serve as a reference for checking the others.
+     */
+    void setPlainSearch(boolean plain) {
+        _plain = plain;
+    }
+
+    /**
+     * Return the move found by my last search, or null if none.
+     */
+    Move lastFoundMove() {
         return _lastFoundMove;
     }
 
+    /**
+     * Return the statistics of my last search, or null if I have not yet
+     * searched.
+     */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /**
+     * Return my transposition table, or null if I have not yet searched.
+     */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /**
+     * Search BOARD to DEPTH as for findMove(BOARD, DEPTH, true, SENSE,
+     * -INFTY, INFTY), and return its value.  Unless DEPTH is 1 or GUESS,
+     * the value from the previous depth, is a win, first searches within
+     * ASPIRATION_WINDOW of GUESS, and searches again with the full window
+     * only if the value falls outside it.
+     */
+    private int aspirationSearch(Board board, int depth, int sense,
+                                 int guess) {
+        if (!_plain && depth > 1 && abs(guess) < WILL_WIN_VALUE) {
+            int alpha = guess - ASPIRATION_WINDOW,
+                beta = guess + ASPIRATION_WINDOW;
+            int value = findMove(board, depth, true, sense, alpha, beta);
+            if (_aborted || (value > alpha && value < beta)) {
+                return value;
+            }
+            _lastFoundMove = null;
+        }
+        return findMove(board, depth, true, sense, -INFTY, INFTY);
+    }
+
+    /**
+     * Make sure I have THREADS worker AIs, and a pool to run them, for
+     * parallel searches, sharing my transposition table iff SHARED, and
+     * prepare them for a new search.
+     */
+    private void setUpWorkers(int threads, boolean shared) {
+        if (_workers == null || _workers.length != threads
+            || (_workers[0]._table == _table) != shared) {
+            _workers = new AI[threads];
+            for (int k = 0; k < threads; k += 1) {
+                _workers[k] = new AI(myPiece(), _controller);
+                _workers[k]._owner = this;
+                _workers[k]._stats = new SearchStats();
+                _workers[k]._table = shared ? _table
+                    : new TranspositionTable(_controller.tableLogSize());
+            }
+            if (_pool != null) {
+                _pool.shutdown();
+            }
+            _pool = new ForkJoinPool(threads);
+        }
+        for (AI worker : _workers) {
+            worker._evaluator = _evaluator;
+            worker._ordering.newSearch();
+            if (!shared) {
+                worker._table.newSearch();
+            }
+        }
+    }
+
+    /**
+     * Search BOARD to DEPTH using my workers, as for findMove(BOARD, DEPTH,
+     * true, SENSE, -INFTY, INFTY), and return its value.  The first root
+     * move in search order is searched alone, to establish a bound; my
+     * workers then take the remaining root moves one at a time, each
+     * searching its own copy of BOARD and narrowing the bound it searches
+     * with as better values are found.
+     */
+    private int searchParallel(Board board, int depth, int sense) {
+        long entry = _table.probe(board.positionKey());
+        int[] moves = moveBuffer(0);
+        int n = board.legalMoves(board.turn(), moves);
+        _ordering.order(board, moves, n, 0, move(entry));
+        int bestValue = searchMove(board, moves[0], depth,
+                                   sense, -INFTY, INFTY);
+        if (_aborted) {
+            return 0;
+        }
+        int best = 0;
+        if (n > 1) {
+            int[] values = new int[n];
+            AtomicInteger next = new AtomicInteger(1),
+                bound = new AtomicInteger(bestValue);
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (AI worker : _workers) {
+                worker._deadline = _deadline;
+                worker._aborted = false;
+                worker._nodes = 0;
+                worker._stats.reset();
+                worker._rootMoveCount = _rootMoveCount;
+                Board copy = worker._searchBoard;
+                copy.copy(board);
+                tasks.add(() -> worker.searchSiblings(copy, moves, n, depth,
+                                                      sense, values,
+                                                      next, bound));
+            }
+            try {
+                for (Future<Boolean> result : _pool.invokeAll(tasks)) {
+                    _aborted |= !result.get();
+                }
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException("parallel search failed",
+                                                excp);
+            }
+            for (AI worker : _workers) {
+                _nodes += worker._nodes;
+                _stats.add(worker._stats);
+            }
+            if (_aborted) {
+                return 0;
+            }
+            for (int k = 1; k < n; k += 1) {
+                if (sense * values[k] > sense * bestValue) {
+                    best = k;
+                    bestValue = values[k];
+                }
+            }
+        }
+        _lastFoundMove = Move.mv(moves[best]);
+        _table.store(board.positionKey(), depth, EXACT, bestValue,
+                     moves[best]);
+        return bestValue;
+    }
+
+    /**
+     * Search the root moves MOVES[k] of BOARD to DEPTH, for values of k
+     * taken from NEXT until it reaches N, storing each one's value in
+     * VALUES[k].  BOUND is the best value found so far at the root for
+     * the side whose SENSE is given, and is updated as I find better
+     * ones.  Return false iff I ran out of time.
+     */
+    private boolean searchSiblings(Board board, int[] moves, int n,
+                                   int depth, int sense, int[] values,
+                                   AtomicInteger next, AtomicInteger bound) {
+        for (int k = next.getAndIncrement(); k < n;
+             k = next.getAndIncrement()) {
+            int move = moves[k];
+            int value;
+            if (sense == 1) {
+                value = searchMove(board, move, depth, sense,
+                                   bound.get(), INFTY);
+            } else {
+                value = searchMove(board, move, depth, sense,
+                                   -INFTY, bound.get());
+            }
+            if (_aborted) {
+                return false;
+            }
+            values[k] = value;
+            if (sense == 1) {
+                bound.accumulateAndGet(value, Math::max);
+            } else {
+                bound.accumulateAndGet(value, Math::min);
+            }
+        }
+        return true;
+    }
+
     /**
      * The move found by the last call to one of the ...FindMove methods
      * below.
      */
     private Move _lastFoundMove;
 
+    /**
+     * Results of earlier searches, keyed by position.  Created on first
+     * use, so that templates do not allocate one.
+     */
+    private TranspositionTable _table;
+
+    /**
+     * Time (as for System.nanoTime) at which the current search must stop.
+     */
+    private long _deadline;
+
+    /**
+     * True iff the current search ran out of time; its results are then
+     * incomplete and must be discarded.
+     */
+    private boolean _aborted;
+
+    /**
+     * Number of positions visited by the current search.
+     */
+    private long _nodes;
+
+    /**
+     * Statistics of the current (or last) search, created at my first
+     * search.
+     */
+    private SearchStats _stats;
+
+    /**
+     * The evaluation function for the current search.
+     */
+    private Evaluator _evaluator;
+
+    /**
+     * Number of nodes quiesce may still search below the current leaf.
+     */
+    private int _quiescenceLeft;
+
+    /**
+     * moveCount() of the position at the root of the current search.
+     */
+    private int _rootMoveCount;
+
+    /**
+     * The board on which I search, reloaded from the position to be
+     * searched before each search.
+     */
+    private final Board _searchBoard = new Board();
+
+    /**
+     * Orders the moves tried at each node.
+     */
+    private final MoveOrdering _ordering = new MoveOrdering();
+
+    /**
+     * AIs that search root moves in parallel for me, or null if I have
+     * not needed any.
+     */
+    private AI[] _workers;
+
+    /**
+     * The pool of threads that runs _workers.
+     */
+    private ForkJoinPool _pool;
+
+    /**
+     * The AI whose search I am part of (myself, unless I am one of its
+     * _workers).
+     */
+    private AI _owner = this;
+
+    /**
+     * Set to stop the search on _ponderer (and my workers' parts of it).
+     */
+    private volatile boolean _stop;
+
+    /**
+     * True iff a value in my transposition table may depend on more than
+     * the arrangement of pieces and the side to move: that is, if a search
+     * since the table was created or cleared had a move limit or reached
+     * a repeated position.  Wins found then are not recorded in the
+     * endgame cache, which is keyed by position alone.  A search with no
+     * move limit and an endgame cache to record in first clears the
+     * tables.
+     */
+    private boolean _historyDependent;
+
+    /**
+     * True iff my searches use only full-window alpha-beta search.
+     */
+    private boolean _plain;
+
+    /**
+     * The search on my opponent's time, running on its own thread or on
+     * my controller's compute pool, or null if none.
+     */
+    private Future<?> _ponderer;
+
+    /**
+     * Set by whichever comes first: _ponderer starting its search, or
+     * stopPondering finding that it has not yet started (in which case it
+     * never will), so that stopping never waits for a search that is
+     * still queued on a busy pool.
+     */
+    private AtomicBoolean _ponderClaimed;
+
+    /**
+     * The opponent's reply that _ponderer assumes, or null if I am not
+     * pondering.
+     */
+    private Move _prediction;
+
+    /**
+     * The log line describing the search on _ponderer, kept by it when it
+     * finishes and written to the log by stopPondering, on the thread
+     * that plays my moves, so that it cannot interleave with my
+     * controller's own log output.  Null if none.
+     */
+    private String _ponderReport;
+
+    /**
+     * _moveBuffers[p] holds the moves generated at ply P of the current
+     * search, as Move.index() values.
+     */
+    private int[][] _moveBuffers = new int[0][];
+
+    /**
+     * Return the move buffer for ply PLY, creating it if needed.
+     */
+    private int[] moveBuffer(int ply) {
+        if (ply >= _moveBuffers.length) {
+            int old = _moveBuffers.length;
+            _moveBuffers = Arrays.copyOf(_moveBuffers, ply + 1);
+            for (int p = old; p <= ply; p += 1) {
+                _moveBuffers[p] = new int[Board.MAX_MOVES];
+            }
+        }
+        return _moveBuffers[ply];
+    }
+
     /**
      * Find a move from position BOARD and return its value, recording
      * the move found in _lastFoundMove iff SAVEMOVE. The move
      * should have maximal value or have value > BETA if SENSE==1,
      * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * DEPTH levels.  Searching at level 0 returns the value found by
+     * quiesce and does not set _lastMoveFound.  Positions
+     * already searched to at least DEPTH are answered from the
+     * transposition table when its entry settles the value.  Moves are
+     * tried in the order chosen by _ordering.  All moves after the first
+     * are tried with a null window, to show that they are no better than
+     * the best so far, and searched again with the full window only if
+     * they are.
      */
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
         /** FIXME */
+        if (visit()) {
+            return 0;
+        }
         if (depth == 0) {
-            return staticScore(board);
+            _quiescenceLeft = QUIESCENCE_NODES;
+            return quiesce(board, sense, alpha, beta);
         }
+        long key = board.positionKey();
+        long entry = _table.probe(key);
+        if (entry != 0 && !saveMove && depth(entry) >= depth) {
+            int score = score(entry);
+            switch (bound(entry)) {
+            case EXACT:
+                return score;
+            case LOWER:
+                alpha = max(alpha, score);
+                break;
+            default:
+                beta = min(beta, score);
+                break;
+            }
+            if (beta <= alpha) {
+                return score;
+            }
+        }
+        int alpha0 = alpha, beta0 = beta;
+        int ply = board.moveCount() - _rootMoveCount;
+        int[] moves = moveBuffer(ply);
+        int n = board.legalMoves(board.turn(), moves);
+        _ordering.order(board, moves, n, ply, move(entry));
+        int best = NO_MOVE;
         int maxVal = INFTY * -sense;
-        for (int i = 0; i < board.legalMoves(board.turn()).size(); i++) {
-            Move move = board.legalMoves(board.turn()).get(i);
-            board.makeMove(move);
+        int i;
+        for (i = 0; i < n; i++) {
+            int move = moves[i];
             int value;
-            if (board.winner() == null) {
-                value = findMove(board, depth - 1,
-                        false, sense * -1, alpha, beta);
-                if (sense == 1 && value == WINNING_VALUE) {
-                    value = WILL_WIN_VALUE;
-                } else if (sense == -1 && value == -WINNING_VALUE) {
-                    value = -WILL_WIN_VALUE;
+            if (i == 0 || _plain) {
+                value = searchMove(board, move, depth, sense, alpha, beta);
+            } else if (sense == 1) {
+                value = searchMove(board, move, depth, sense,
+                                   alpha, alpha + 1);
+                if (value > alpha && value < beta && !_aborted) {
+                    value = searchMove(board, move, depth, sense,
+                                       alpha, beta);
                 }
-            } else if (board.winner() == WHITE) {
-                value = WINNING_VALUE;
             } else {
-                value = -WINNING_VALUE;
+                value = searchMove(board, move, depth, sense,
+                                   beta - 1, beta);
+                if (value < beta && value > alpha && !_aborted) {
+                    value = searchMove(board, move, depth, sense,
+                                       alpha, beta);
+                }
+            }
+            if (_aborted) {
+                return maxVal;
             }
-            board.undo();
             if (sense == 1) {
                 if (value > maxVal) {
                     if (saveMove) {
-                        _lastFoundMove = move;
+                        _lastFoundMove = Move.mv(move);
                     }
+                    best = move;
                     maxVal = value;
                     alpha = max(alpha, value);
                 }
             } else {
                 if (value < maxVal) {
                     if (saveMove) {
-                        _lastFoundMove = move;
+                        _lastFoundMove = Move.mv(move);
                     }
+                    best = move;
                     maxVal = value;
                     beta = min(beta, value);
                 }
             }
             if (beta <= alpha) {
+                _ordering.cutoff(moves[i], ply, i, depth);
+                _stats.cutoff(i);
+                i += 1;
                 break;
             }
         }
+        _ordering.searched(i);
+        int bound = maxVal <= alpha0 ? UPPER : maxVal >= beta0 ? LOWER : EXACT;
+        _table.store(key, depth, bound, maxVal, best);
         return maxVal;
     }
 
+    /**
+     * Count a visit to a node of the current search, and return true iff
+     * the search should be abandoned because it has run out of time or
+     * been stopped.
+     */
+    private boolean visit() {
+        _nodes += 1;
+        if ((_nodes & CLOCK_INTERVAL) == 0
+            && (_owner._stop || System.nanoTime() > _deadline)) {
+            _aborted = true;
+        }
+        return _aborted;
+    }
+
+    /**
+     * Return a value for BOARD within the window ALPHA .. BETA, for the
+     * side whose SENSE is given, that takes pending captures and king
+     * escapes into account.  The side to move may either "stand pat" on
+     * the static score or make one of the tactical moves given by
+     * Board.tacticalMoves (a capture or, for white, a king move to an
+     * edge or onto an open lane to one), and the search continues until
+     * neither side has such a move that improves on standing pat, or
+     * until _quiescenceLeft nodes have been searched.
+     */
+    private int quiesce(Board board, int sense, int alpha, int beta) {
+        int best = staticScore(board);
+        if (_quiescenceLeft <= 0) {
+            return best;
+        }
+        _quiescenceLeft -= 1;
+        if (sense == 1) {
+            alpha = max(alpha, best);
+        } else {
+            beta = min(beta, best);
+        }
+        if (alpha >= beta) {
+            return best;
+        }
+        int[] moves = moveBuffer(board.moveCount() - _rootMoveCount);
+        int n = board.tacticalMoves(board.turn(), moves);
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            if (visit()) {
+                return 0;
+            }
+            board.makeMove(move);
+            if (board.repeatedPosition()) {
+                _owner._historyDependent = true;
+            }
+            int value;
+            if (board.winner() == null) {
+                value = quiesce(board, -sense, alpha, beta);
+                if (sense == 1 && value == WINNING_VALUE) {
+                    value = WILL_WIN_VALUE;
+                } else if (sense == -1 && value == -WINNING_VALUE) {
+                    value = -WILL_WIN_VALUE;
+                }
+            } else if (board.winner() == WHITE) {
+                value = WINNING_VALUE;
+            } else {
+                value = -WINNING_VALUE;
+            }
+            board.undo();
+            if (_aborted) {
+                return 0;
+            }
+            if (sense == 1) {
+                best = max(best, value);
+                alpha = max(alpha, value);
+            } else {
+                best = min(best, value);
+                beta = min(beta, value);
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the value of making the move whose index is MOVE on BOARD,
+     * searching the resulting position to DEPTH - 1 within the window
+     * ALPHA .. BETA, for the side whose SENSE is given.  Leaves BOARD
+     * unchanged.
+     */
+    private int searchMove(Board board, int move, int depth, int sense,
+                           int alpha, int beta) {
+        board.makeMove(move);
+        if (board.repeatedPosition()) {
+            _owner._historyDependent = true;
+        }
+        int value;
+        if (board.winner() == null) {
+            value = findMove(board, depth - 1,
+                    false, sense * -1, alpha, beta);
+            if (sense == 1 && value == WINNING_VALUE) {
+                value = WILL_WIN_VALUE;
+            } else if (sense == -1 && value == -WINNING_VALUE) {
+                value = -WILL_WIN_VALUE;
+            }
+        } else if (board.winner() == WHITE) {
+            value = WINNING_VALUE;
+        } else {
+            value = -WINNING_VALUE;
+        }
+        board.undo();
+        return value;
+    }
+
     /**
      * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * based on characteristics of BOARD, for use when there is no time
+     * budget.
      */
     private static int maxDepth(Board board) {
         /** FIXME? */
@@ -144,25 +1008,13 @@ class AI extends Player {
     }
 
     /**
-     * Return a heuristic value for BOARD.
+     * Return a heuristic value for BOARD, as given by _evaluator.
      */
     private int staticScore(Board board) {
         /** FIXME */
-        int x = min(board.kingPosition().col(), 8 - board.kingPosition().col());
-        int y = min(board.kingPosition().row(), 8 - board.kingPosition().row());
-        int count = 0;
-        Square sq;
-        for (int i = 0; i < 4; i++) {
-            sq = board.kingPosition().rookMove(i, 1);
-            if (board.get(sq) == BLACK) {
-                count++;
-            }
-        }
-        return -min(x, y) - count;
+        _stats.leaf(board.moveCount() - _rootMoveCount);
+        return _evaluator.score(board);
     }
-    /**
-     * FIXME: More here.
-     */
 
 }
 
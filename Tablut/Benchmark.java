@@ -0,0 +1,218 @@
+package tablut;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+
+/** Times the operations that dominate search on a fixed set of
+ *  positions: move generation (into a buffer and as a List), make/undo
+ *  round trips, encodedBoard, static evaluation, and a fixed-depth AI
+ *  search; then runs a perft count (see Perft).  Each benchmark is run
+ *  for a number of warm-up and measured iterations of at least
+ *  --millis milliseconds each, and its throughput is reported in
+ *  operations per second, as text and optionally as JSON so that runs
+ *  can be compared.  Usage:
+ *      java tablut.Benchmark [--json=FILE] [--iterations=N]
+ *          [--millis=N] [--perft=DEPTH]
+ *  @author Wen Zeng
+ */
+public class Benchmark {
+
+    /** Defaults for the numbers of warm-up and measured iterations, the
+     *  minimum length of an iteration, and the perft depth. */
+    private static final int
+        WARMUPS = 2, DEFAULT_ITERATIONS = 5, DEFAULT_MILLIS = 200,
+        DEFAULT_PERFT = 3;
+
+    /** Number of random plies from the initial position to each of the
+     *  other canonical positions, and the seed for those plies. */
+    private static final int[] POSITION_PLIES = { 10, 20, 30 };
+    /** Seed for the random plies. */
+    private static final long SEED = 0x7AB1E7L;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** Run the benchmarks described by ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--json={0,1} --iterations=(\\d+){0,1}"
+                            + " --millis=(\\d+){0,1} --perft=(\\d+){0,1}",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.Benchmark [--json=FILE]"
+                               + " [--iterations=N] [--millis=N]"
+                               + " [--perft=DEPTH]");
+            System.exit(1);
+        }
+        Benchmark bench =
+            new Benchmark(intOption(options, "--iterations",
+                                    DEFAULT_ITERATIONS),
+                          intOption(options, "--millis", DEFAULT_MILLIS));
+        bench.runAll();
+        bench.perft(intOption(options, "--perft", DEFAULT_PERFT));
+        if (options.contains("--json")) {
+            try (Writer out = new FileWriter(options.getFirst("--json"))) {
+                out.write(bench.toJson());
+            } catch (IOException excp) {
+                System.err.printf("Could not write %s: %s%n",
+                                  options.getFirst("--json"),
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /** Return the value of integer option NAME in OPTIONS, or DFLT if it
+     *  is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int dflt) {
+        return options.contains(name)
+            ? Integer.parseInt(options.getFirst(name)) : dflt;
+    }
+
+    /** A benchmark run of ITERATIONS measured iterations of at least
+     *  MILLIS milliseconds each. */
+    Benchmark(int iterations, int millis) {
+        _iterations = iterations;
+        _minNanos = millis * NANOS_PER_MILLI;
+        Controller control =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(), false);
+        _ai = new AI(WHITE, control);
+        _evaluator = control.evaluator(WHITE);
+        _positions = positions();
+    }
+
+    /** Return the canonical positions: the initial position and those
+     *  reached from it by POSITION_PLIES random moves. */
+    static List<Board> positions() {
+        List<Board> result = new ArrayList<>();
+        result.add(new Board());
+        for (int plies : POSITION_PLIES) {
+            Random random = new Random(SEED + plies);
+            Board board = new Board();
+            while (board.moveCount() < plies && board.winner() == null) {
+                List<Move> moves = board.legalMoves(board.turn());
+                Move move = moves.get(random.nextInt(moves.size()));
+                board.makeMove(move);
+                if (board.winner() != null) {
+                    board.undo();
+                }
+            }
+            result.add(board);
+        }
+        return result;
+    }
+
+    /** Time each benchmark in turn. */
+    void runAll() {
+        time("legalMoves", b -> b.legalMoves(b.turn(), _buffer));
+        time("legalMovesList", b -> b.legalMoves(b.turn()).size());
+        time("makeMoveUndo", this::makeMoveUndo);
+        time("encodedBoard", b -> b.encodedBoard().length());
+        time("staticScore", _evaluator::score);
+        time("findMove", this::findMove);
+        System.out.printf("(checksum %d)%n", _sink);
+    }
+
+    /** Make and undo each legal move on BOARD, returning the number of
+     *  moves. */
+    private long makeMoveUndo(Board board) {
+        int n = board.legalMoves(board.turn(), _buffer);
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(_buffer[i]);
+            board.undo();
+        }
+        return n;
+    }
+
+    /** Return the index of the move found by a fixed-depth search of
+     *  BOARD, starting with an empty transposition table. */
+    private long findMove(Board board) {
+        if (_ai.table() != null) {
+            _ai.table().clear();
+        }
+        return _ai.findMove(board).index();
+    }
+
+    /** Time OPERATION, applied to each canonical position in turn, and
+     *  record its throughput under NAME. */
+    private void time(String name, ToLongFunction<Board> operation) {
+        double best = 0, total = 0;
+        for (int k = -WARMUPS; k < _iterations; k += 1) {
+            long ops = 0, start = System.nanoTime(), elapsed;
+            do {
+                for (Board board : _positions) {
+                    _sink += operation.applyAsLong(board);
+                }
+                ops += _positions.size();
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < _minNanos);
+            if (k >= 0) {
+                double rate = ops * 1e9 / elapsed;
+                best = Math.max(best, rate);
+                total += rate;
+            }
+        }
+        double mean = total / _iterations;
+        System.out.printf("%-15s %14.1f ops/s (best %.1f)%n", name, mean,
+                          best);
+        _results.add(String.format(Locale.ROOT, "{\"name\": \"%s\","
+                                   + " \"opsPerSecond\": %.1f,"
+                                   + " \"bestOpsPerSecond\": %.1f,"
+                                   + " \"iterations\": %d}",
+                                   name, mean, best, _iterations));
+    }
+
+    /** Run a perft count to DEPTH from the initial position. */
+    void perft(int depth) {
+        long start = System.nanoTime();
+        long nodes = new Perft(depth).count(new Board(), depth);
+        double secs = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("perft %d: %d nodes in %.3f s (%.0f nodes/s)%n",
+                          depth, nodes, secs, nodes / secs);
+        _perft = String.format(Locale.ROOT, "{\"depth\": %d, \"nodes\": %d,"
+                               + " \"nodesPerSecond\": %.0f}",
+                               depth, nodes, nodes / secs);
+    }
+
+    /** Return my results as a JSON object.  (Numbers in it are
+     *  formatted in Locale.ROOT, so that they use decimal points.) */
+    String toJson() {
+        return String.format("{%n  \"benchmarks\": [%n    %s%n  ],%n"
+                             + "  \"perft\": %s%n}%n",
+                             String.join(String.format(",%n    "), _results),
+                             _perft);
+    }
+
+    /** Number of measured iterations per benchmark. */
+    private final int _iterations;
+    /** Minimum length of an iteration. */
+    private final long _minNanos;
+    /** The positions each benchmark is applied to. */
+    private final List<Board> _positions;
+    /** The AI used for findMove. */
+    private final AI _ai;
+    /** The evaluation function timed by staticScore. */
+    private final Evaluator _evaluator;
+    /** Move buffer for generation. */
+    private final int[] _buffer = new int[Board.MAX_MOVES];
+    /** Accumulates the operations' results, which are printed after the
+     *  timings so that the work producing them cannot be optimized
+     *  away. */
+    private long _sink;
+    /** JSON objects for the benchmark results so far. */
+    private final List<String> _results = new ArrayList<>();
+    /** JSON object for the perft result, or null. */
+    private String _perft;
+}
@@ -1,15 +1,14 @@
 package tablut;
 
+import java.util.Arrays;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Stack;
 import java.util.ArrayList;
+import java.util.Random;
 
 import static tablut.Piece.*;
 import static tablut.Square.*;
-import static tablut.Move.mv;
+import static tablut.Move.ROOK_MOVES;
 import static tablut.Utils.error;
 
 /**
@@ -33,6 +32,14 @@ class Board {
             WTHRONE = sq(3, 4),
             ETHRONE = sq(5, 4);
 
+    /**
+     * An upper bound on the number of legal moves for one side.  Each
+     * empty square of a row or column can be reached along it by at most
+     * two pieces, and a row or column with any pieces has at most SIZE - 1
+     * empty squares.
+     */
+    static final int MAX_MOVES = 2 * SIZE * 2 * (SIZE - 1);
+
     /**
      * Initial positions of attackers.
      */
@@ -67,45 +74,118 @@ class Board {
     }
 
     /**
-     * Copies MODEL into me.
+     * Initializes a copy of MODEL that shares MODEL's undo journal and
+     * record of positions iff SHARE (see snapshot()).
+     */
+    private Board(Board model, boolean share) {
+        if (share) {
+            copyPosition(model);
+            _journal = model._journal;
+            _journalSize = model._journalSize;
+            _positions = model._positions;
+            _shared = model._shared = true;
+        } else {
+            copy(model);
+        }
+    }
+
+    /**
+     * Copies MODEL into me, so that the two boards are entirely
+     * independent.  Reuses my existing arrays where they are large enough,
+     * so that repeatedly copying into the same board allocates nothing.
      */
     void copy(Board model) {
         /** FIXME */
         if (model == this) {
             return;
         }
-        init();
-        _board = (HashMap<Square, Piece>) model._board;
+        copyPosition(model);
+        if (_journal == null || _shared
+            || _journal.length < model._journalSize) {
+            _journal = Arrays.copyOf(model._journal, model._journal.length);
+        } else {
+            System.arraycopy(model._journal, 0, _journal, 0,
+                             model._journalSize);
+        }
+        _journalSize = model._journalSize;
+        if (_positions == null || _shared) {
+            _positions = new LongMultiset(model._positions);
+        } else {
+            _positions.copy(model._positions);
+        }
+        _shared = false;
+    }
+
+    /**
+     * Return a copy of me that initially shares my undo journal and record
+     * of positions, rather than copying them.  Whichever of the two boards
+     * first makes or undoes a move (or clears its undo history) then takes
+     * a private copy of them, so this is cheaper than new Board(this) for
+     * clients that mostly just examine the position.  Must be called by the
+     * thread that is using me; the result may then be handed to another.
+     */
+    Board snapshot() {
+        return new Board(this, true);
+    }
+
+    /**
+     * Copies the position, turn, and status of MODEL into me.
+     */
+    private void copyPosition(Board model) {
+        System.arraycopy(model._bits, 0, _bits, 0, BITS_LENGTH);
+        _key = model._key;
+        _king = model._king;
+        _throneHostile = model._throneHostile;
+        _mobility[0] = model._mobility[0];
+        _mobility[1] = model._mobility[1];
+        System.arraycopy(model._pieceCounts, 0, _pieceCounts, 0,
+                         _pieceCounts.length);
         _moveCount = model.moveCount();
         _turn = model.turn();
         _winner = model.winner();
-        _undo = model._undo;
-        _encodedboard = model._encodedboard;
+        _repeated = model._repeated;
         _limit = model._limit;
     }
 
+    /**
+     * Take private copies of my undo journal and record of positions if I
+     * am sharing them with another board.
+     */
+    private void unshare() {
+        if (_shared) {
+            _journal = _journal.clone();
+            _positions = new LongMultiset(_positions);
+            _shared = false;
+        }
+    }
+
     /**
      * Clears the board to the initial position.
      */
     void init() {
         /** FIXME */
-        _board = new HashMap<Square, Piece>();
-        for (Square sq : SQUARE_LIST) {
-            _board.put(sq, EMPTY);
-        }
+        Arrays.fill(_bits, 0);
+        _key = 0;
+        _king = null;
+        _throneHostile = false;
+        _mobility[0] = _mobility[1] = 0;
+        Arrays.fill(_pieceCounts, 0);
+        _pieceCounts[EMPTY.ordinal()] = NUM_SQUARES;
         for (Square sq : INITIAL_ATTACKERS) {
-            _board.put(sq, BLACK);
+            put(BLACK, sq);
         }
         for (Square sq : INITIAL_DEFENDERS) {
-            _board.put(sq, WHITE);
+            put(WHITE, sq);
         }
-        _board.put(THRONE, KING);
+        put(KING, THRONE);
         _turn = BLACK;
         _moveCount = 0;
         _winner = null;
         _repeated = false;
-        _undo = new Stack<>();
-        _encodedboard = new HashSet<>();
+        _journal = new int[INITIAL_JOURNAL_SIZE];
+        _journalSize = 0;
+        _positions = new LongMultiset();
+        _shared = false;
     }
 
     /**
@@ -121,6 +201,14 @@ class Board {
         _limit = n;
     }
 
+    /**
+     * Return the move limit set by setMoveLimit, or Integer.MAX_VALUE if
+     * there is none.
+     */
+    int moveLimit() {
+        return _limit;
+    }
+
     /**
      * Return a Piece representing whose move it is (WHITE or BLACK).
      */
@@ -149,7 +237,7 @@ class Board {
      */
     private void checkRepeated() {
         /** FIXME */
-        if (_encodedboard.contains(encodedBoard())) {
+        if (_positions.contains(_key)) {
             _repeated = true;
             _winner = turn();
         }
@@ -168,9 +256,31 @@ class Board {
      */
     Square kingPosition() {
         /** FIXME */
-        for (Square sq : SQUARE_LIST) {
-            if (_board.get(sq) == KING) {
-                return sq;
+        assert kingPositionOK();
+        return _king;
+    }
+
+    /**
+     * Return true iff _king is consistent with the contents of the board:
+     * null if there is no king, and otherwise a square holding a king.
+     * (Edited positions may hold several.)
+     */
+    private boolean kingPositionOK() {
+        if (_king == null) {
+            return findKing() == null;
+        }
+        return get(_king) == KING;
+    }
+
+    /**
+     * Return the location of a king on the board, found by examining its
+     * bit set, or null if there is none.
+     */
+    private Square findKing() {
+        for (int w = 0; w < WORDS; w += 1) {
+            long king = _bits[KING_BITS + w];
+            if (king != 0) {
+                return sq(w * Long.SIZE + Long.numberOfTrailingZeros(king));
             }
         }
         return null;
@@ -190,7 +300,16 @@ class Board {
     final Piece get(int col, int row) {
         /** FIXME */
         assert exists(col, row);
-        return _board.get(sq(col, row));
+        int i = row * SIZE + col, w = i >>> WORD_SHIFT;
+        long m = 1L << i;
+        if ((_bits[BLACK_BITS + w] & m) != 0) {
+            return BLACK;
+        } else if ((_bits[WHITE_BITS + w] & m) != 0) {
+            return WHITE;
+        } else if ((_bits[KING_BITS + w] & m) != 0) {
+            return KING;
+        }
+        return EMPTY;
     }
 
     /**
@@ -205,16 +324,56 @@ class Board {
      */
     final void put(Piece p, Square s) {
         /** FIXME */
-        _board.put(s, p);
+        Piece old = get(s);
+        int i = s.index(), w = i >>> WORD_SHIFT;
+        long m = 1L << i;
+        if (old != EMPTY) {
+            _key ^= ZOBRIST[old.ordinal()][i];
+        }
+        if (p != EMPTY) {
+            _key ^= ZOBRIST[p.ordinal()][i];
+        }
+        countMobility(i, old, -1);
+        _bits[WHITE_BITS + w] &= ~m;
+        _bits[BLACK_BITS + w] &= ~m;
+        _bits[KING_BITS + w] &= ~m;
+        if (p != EMPTY) {
+            _bits[bitsOf(p) + w] |= m;
+        }
+        countMobility(i, p, 1);
+        if (w == 0 && (m & THRONE_NEIGHBORS) != 0) {
+            _throneHostile =
+                Long.bitCount(_bits[BLACK_BITS] & THRONE_NEIGHBORS) >= 3;
+        }
+        _pieceCounts[old.ordinal()] -= 1;
+        _pieceCounts[p.ordinal()] += 1;
+        if (p == KING) {
+            _king = s;
+        } else if (s == _king) {
+            _king = findKing();
+        }
     }
 
     /**
-     * Set square S to P and record for undoing.
+     * Add SIGN times the contribution of the square with index I, holding
+     * P, to the mobility counts: if P is a piece, the number of empty
+     * squares next to it; if P is EMPTY, one for each piece next to it.
      */
-    final void revPut(Piece p, Square s) {
-        /** FIXME */
-        _undo.add(_board.clone());
-        put(p, s);
+    private void countMobility(int i, Piece p, int sign) {
+        long near = NEIGHBORS[i * WORDS], far = NEIGHBORS[i * WORDS + 1];
+        if (p != EMPTY) {
+            int empty = Long.bitCount(near & ~occupancy(0))
+                + Long.bitCount(far & ~occupancy(1));
+            _mobility[p == BLACK ? 1 : 0] += sign * empty;
+        } else {
+            _mobility[0] += sign
+                * (Long.bitCount(near & (_bits[WHITE_BITS] | _bits[KING_BITS]))
+                   + Long.bitCount(far & (_bits[WHITE_BITS + 1]
+                                          | _bits[KING_BITS + 1])));
+            _mobility[1] += sign
+                * (Long.bitCount(near & _bits[BLACK_BITS])
+                   + Long.bitCount(far & _bits[BLACK_BITS + 1]));
+        }
     }
 
     /**
@@ -234,19 +393,53 @@ class Board {
         if (!from.isRookMove(to)) {
             return false;
         }
-        SqList sqlist = ROOK_SQUARES[from.index()][from.direction(to)];
-        for (Square sq : sqlist) {
-            if (sq == to) {
-                if (get(sq) != EMPTY) {
-                    return false;
-                }
-                break;
-            }
-            if (get(sq) != EMPTY) {
-                return false;
-            }
+        int dir = from.direction(to);
+        int dist = (to.index() - from.index()) / STEP[dir];
+        return dist <= reach(from.index(), dir);
+    }
+
+    /**
+     * Return the number of empty squares in direction DIR (as for
+     * Square.rookMove) from FROM before the first occupied square or the
+     * edge of the board.
+     */
+    int reach(Square from, int dir) {
+        return reach(from.index(), dir);
+    }
+
+    /**
+     * Return the number of empty squares in direction DIR from the square
+     * with index FROM before the first occupied square or the edge of the
+     * board.  Finds the nearest occupied square in constant time from the
+     * intersection of the board's occupancy with RAYS.
+     */
+    private int reach(int from, int dir) {
+        int ray = (from * 4 + dir) * WORDS;
+        long near = RAYS[ray] & occupancy(0),
+            far = RAYS[ray + 1] & occupancy(1);
+        int blocker;
+        if (STEP[dir] > 0) {
+            blocker = near != 0 ? Long.numberOfTrailingZeros(near)
+                : far != 0 ? Long.SIZE + Long.numberOfTrailingZeros(far)
+                : -1;
+        } else {
+            blocker = far != 0 ? 2 * Long.SIZE - 1
+                - Long.numberOfLeadingZeros(far)
+                : near != 0 ? Long.SIZE - 1 - Long.numberOfLeadingZeros(near)
+                : -1;
         }
-        return true;
+        if (blocker < 0) {
+            return ROOK_SQUARES[from][dir].size();
+        }
+        return (blocker - from) / STEP[dir] - 1;
+    }
+
+    /**
+     * Return word W of the bit set of occupied squares.
+     */
+    private long occupancy(int w) {
+        return _bits[WHITE_BITS + w] | _bits[BLACK_BITS + w]
+            | _bits[KING_BITS + w];
     }
 
     /**
@@ -286,22 +479,46 @@ class Board {
      * @return true or false
      */
     boolean isOpponent(Piece side, Square sq) {
-        if (_board.get(sq).side() == side.opponent()) {
-            return true;
-        }
-        if (sq == THRONE && _board.get(sq) == EMPTY) {
+        return isOpponent(side, sq.index());
+    }
+
+    /**
+     * Return true iff the square with index I is hostile to pieces on
+     * SIDE: it holds an opponent's piece, or it is the throne and is
+     * empty, or is occupied and surrounded on three sides by black (which
+     * makes it hostile to white).
+     */
+    private boolean isOpponent(Piece side, int i) {
+        Piece opponent = side.opponent();
+        if (opponent != null && occupiedBy(opponent, i)) {
             return true;
         }
-        int count = 0;
-        for (int i = 0; i < 4; i++) {
-            if (_board.get(THRONE.rookMove(i, 1)) == BLACK) {
-                count++;
-            }
+        if (i != THRONE_INDEX) {
+            return false;
         }
-        if (sq == THRONE && count >= 3 && side == WHITE) {
-            return true;
+        return !occupied(i) || side == WHITE && _throneHostile;
+    }
+
+    /**
+     * Return true iff the square with index I holds a piece on SIDE
+     * (WHITE, which includes the king, or BLACK).
+     */
+    private boolean occupiedBy(Piece side, int i) {
+        int w = i >>> WORD_SHIFT;
+        long m = 1L << i;
+        if (side == BLACK) {
+            return (_bits[BLACK_BITS + w] & m) != 0;
         }
-        return false;
+        return ((_bits[WHITE_BITS + w] | _bits[KING_BITS + w]) & m) != 0;
+    }
+
+    /**
+     * Return true iff the square with index I holds any piece.
+     */
+    private boolean occupied(int i) {
+        int w = i >>> WORD_SHIFT;
+        return ((_bits[WHITE_BITS + w] | _bits[BLACK_BITS + w]
+                 | _bits[KING_BITS + w]) & (1L << i)) != 0;
     }
 
 
@@ -311,9 +528,14 @@ class Board {
     void makeMove(Square from, Square to) {
         /** FIXME */
         assert isLegal(from, to);
-        _encodedboard.add(encodedBoard());
-        Piece temp = _board.get(from);
-        revPut(EMPTY, from);
+        unshare();
+        _positions.add(_key);
+        Piece temp = get(from);
+        int entry = from.index() | to.index() << TO_SHIFT
+            | temp.ordinal() << MOVED_SHIFT
+            | (_winner == null ? 0 : _winner.ordinal()) << WINNER_SHIFT
+            | (_repeated ? 1 : 0) << REPEATED_SHIFT;
+        put(EMPTY, from);
         put(temp, to);
         _moveCount++;
         if (_limit != 0) {
@@ -322,8 +544,14 @@ class Board {
             }
         }
         for (int i = 0; i < 4; i++) {
-            capture(to, to.rookMove(i, 2));
+            Piece captured = capture(to.index(), i);
+            entry |= captured.ordinal() << (CAPTURED_SHIFT + 2 * i);
+        }
+        if (_journalSize == _journal.length) {
+            _journal = Arrays.copyOf(_journal, 2 * _journal.length);
         }
+        _journal[_journalSize] = entry;
+        _journalSize += 1;
         if (turn() == BLACK) {
             if (kingPosition() == null) {
                 _winner = BLACK;
@@ -334,6 +562,7 @@ class Board {
             }
         }
         _turn = turn().opponent();
+        _key ^= WHITE_TO_MOVE;
         checkRepeated();
         if (!hasMove(turn())) {
             _winner = turn().opponent();
@@ -348,38 +577,139 @@ class Board {
     }
 
     /**
-     * Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     * SQ0 and the necessary conditions are satisfied.
+     * Move according to the move whose index (as for Move.index) is MOVE,
+     * assuming it is a legal move.
      */
-    private void capture(Square sq0, Square sq2) {
+    void makeMove(int move) {
+        makeMove(sq(Move.fromIndex(move)), sq(Move.toIndex(move)));
+    }
+
+    /**
+     * Capture the piece next to the square with index TO in direction DIR
+     * (as for Square.rookMove), assuming a piece just moved to TO and the
+     * necessary conditions are satisfied.  Return the piece captured, or
+     * EMPTY if there is none.
+     */
+    private Piece capture(int to, int dir) {
         /** FIXME */
-        if (sq0 == null || sq2 == null) {
-            return;
+        if (!captures(to, dir)) {
+            return EMPTY;
         }
-        Square btwsq = sq0.between(sq2);
+        Square btwsq = sq(CAPTURE_VICTIM[to * 4 + dir]);
         Piece btwpiece = get(btwsq);
-        if (btwpiece != KING) {
-            if (isOpponent(btwpiece.side(), sq0)
-                    && isOpponent(btwpiece.side(), sq2)) {
-                put(EMPTY, btwsq);
-            }
+        put(EMPTY, btwsq);
+        return btwpiece;
+    }
+
+    /**
+     * Return true iff the piece next to the square with index TO in
+     * direction DIR is captured by the piece on TO, assuming that piece
+     * just moved there.
+     */
+    private boolean captures(int to, int dir) {
+        int k = to * 4 + dir, victim = CAPTURE_VICTIM[k],
+            partner = CAPTURE_PARTNER[k];
+        if (partner < 0) {
+            return false;
+        }
+        Piece side;
+        if (occupiedBy(BLACK, victim)) {
+            side = BLACK;
+        } else if (occupiedBy(WHITE, victim)) {
+            side = WHITE;
         } else {
-            if (btwsq != ETHRONE && btwsq != STHRONE
-                    && btwsq != WTHRONE && btwsq != NTHRONE
-                    && btwsq != THRONE) {
-                if (isOpponent(btwpiece.side(), sq0)
-                        && isOpponent(btwpiece.side(), sq2)) {
-                    put(EMPTY, btwsq);
-                }
-            } else {
-                if (isOpponent(btwpiece.side(), sq0)
-                        && isOpponent(btwpiece.side(), sq2)
-                        && isOpponent(btwpiece.side(), sq0.diag1(sq2))
-                        && isOpponent(btwpiece.side(), sq0.diag2(sq2))) {
-                    put(EMPTY, btwsq);
-                }
+            return false;
+        }
+        if (!isOpponent(side, to) || !isOpponent(side, partner)) {
+            return false;
+        }
+        if (side == BLACK || CAPTURE_DIAG1[k] < 0
+            || (_bits[KING_BITS] & (1L << victim)) == 0) {
+            return true;
+        }
+        return isOpponent(side, CAPTURE_DIAG1[k])
+            && isOpponent(side, CAPTURE_DIAG2[k]);
+    }
+
+    /**
+     * Return true iff the move FROM-TO, assumed legal, would capture at
+     * least one piece.  Does not change the position.
+     */
+    boolean isCapture(Square from, Square to) {
+        return isCapture(from.index(), to.index());
+    }
+
+    /**
+     * Return true iff MOVE, assumed legal, would capture at least one
+     * piece.
+     */
+    boolean isCapture(Move move) {
+        return isCapture(move.from(), move.to());
+    }
+
+    /**
+     * Return true iff the move whose index (as for Move.index) is MOVE,
+     * assumed legal, would capture at least one piece.
+     */
+    boolean isCapture(int move) {
+        return isCapture(Move.fromIndex(move), Move.toIndex(move));
+    }
+
+    /**
+     * Return true iff moving the piece on the square with index FROM to
+     * the square with index TO, assumed legal, would capture at least one
+     * piece.  Reads the capture tables against the occupancy as it would
+     * be after the move, with the moving piece on TO and FROM empty,
+     * without changing anything, so that it costs much less than making
+     * and undoing the move.
+     */
+    private boolean isCapture(int from, int to) {
+        Piece side = occupiedBy(BLACK, from) ? WHITE : BLACK;
+        for (int d = 0; d < 4; d += 1) {
+            int k = to * 4 + d, victim = CAPTURE_VICTIM[k];
+            if (CAPTURE_PARTNER[k] < 0 || !occupiedBy(side, victim)
+                || !isOpponentAfter(side, CAPTURE_PARTNER[k], from, to)) {
+                continue;
+            }
+            if (side == BLACK || CAPTURE_DIAG1[k] < 0
+                || (_bits[KING_BITS] & (1L << victim)) == 0
+                || isOpponentAfter(side, CAPTURE_DIAG1[k], from, to)
+                   && isOpponentAfter(side, CAPTURE_DIAG2[k], from, to)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Return true iff the square with index I, other than TO, would be
+     * hostile to pieces on SIDE (as for isOpponent) after the piece on
+     * FROM, an opponent of SIDE, moved to TO.
+     */
+    private boolean isOpponentAfter(Piece side, int i, int from, int to) {
+        if (i == from) {
+            return i == THRONE_INDEX;
+        }
+        if (occupiedBy(side.opponent(), i)) {
+            return true;
+        }
+        if (i != THRONE_INDEX) {
+            return false;
+        }
+        if (!occupied(i)) {
+            return true;
+        }
+        if (side != WHITE) {
+            return false;
+        }
+        long black = _bits[BLACK_BITS];
+        if (from < Long.SIZE) {
+            black &= ~(1L << from);
+        }
+        if (to < Long.SIZE) {
+            black |= 1L << to;
+        }
+        return Long.bitCount(black & THRONE_NEIGHBORS) >= 3;
     }
 
     /**
@@ -387,25 +717,37 @@ class Board {
      */
     void undo() {
         /** FIXME */
-        if (_moveCount > 0) {
-            _board = (HashMap<Square,Piece>) _undo.pop();
+        if (_journalSize > 0) {
+            unshare();
+            _journalSize -= 1;
+            int entry = _journal[_journalSize];
+            Square from = sq(entry & SQUARE_MASK),
+                to = sq((entry >>> TO_SHIFT) & SQUARE_MASK);
+            for (int i = 0; i < 4; i++) {
+                int captured = (entry >>> (CAPTURED_SHIFT + 2 * i)) & 3;
+                if (captured != 0) {
+                    put(PIECES[captured], to.rookMove(i, 1));
+                }
+            }
+            put(EMPTY, to);
+            put(PIECES[(entry >>> MOVED_SHIFT) & 3], from);
+            int winner = (entry >>> WINNER_SHIFT) & 3;
+            _winner = winner == 0 ? null : PIECES[winner];
+            _repeated = ((entry >>> REPEATED_SHIFT) & 1) != 0;
             _moveCount--;
-            _repeated = false;
-            _winner = null;
             _turn = turn().opponent();
+            _key ^= WHITE_TO_MOVE;
             undoPosition();
         }
     }
 
     /**
-     * Remove record of current position in the set of positions encountered,
-     * unless it is a repeated position or we are at the first move.
+     * Remove one record of the current position from the positions
+     * encountered, undoing its addition by the move just undone.
      */
     private void undoPosition() {
         /** FIXME */
-        if (moveCount() != 0 && !repeatedPosition()) {
-            _encodedboard.remove(encodedBoard());
-        }
+        _positions.remove(_key);
     }
 
     /**
@@ -414,7 +756,9 @@ class Board {
      */
     void clearUndo() {
         /** FIXME */
-        _undo = new Stack<>();
+        unshare();
+        _journalSize = 0;
+        _positions.clear();
     }
 
     /**
@@ -426,23 +770,196 @@ class Board {
         ArrayList<Move> arrls = new ArrayList<>();
         for (Square sq : pieceLocations(side)) {
             for (int i = 0; i < 4; i++) {
-                SqList sqlist = ROOK_SQUARES[sq.index()][i];
-                for (Square sqls : sqlist) {
-                    if (isUnblockedMove(sq, sqls)) {
-                        arrls.add(mv(sq, sqls));
+                SqList ray = ROOK_SQUARES[sq.index()][i];
+                Move.MoveList moves = ROOK_MOVES[sq.index()][i];
+                for (int k = 0; k < ray.size(); k += 1) {
+                    if (occupied(ray.get(k).index())) {
+                        break;
                     }
+                    arrls.add(moves.get(k));
                 }
             }
         }
         return arrls;
     }
 
+    /**
+     * Store the Move.index() values of all legal moves on the current board
+     * for SIDE (ignoring whose turn it is at the moment) in MOVES, in the
+     * same order as legalMoves(SIDE), and return how many there are.
+     * MOVES must have room for MAX_MOVES values.  Allocates nothing, so
+     * that a search can reuse one buffer per ply.
+     */
+    int legalMoves(Piece side, int[] moves) {
+        int n = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            long bits = side == BLACK ? _bits[BLACK_BITS + w]
+                : _bits[WHITE_BITS + w] | _bits[KING_BITS + w];
+            while (bits != 0) {
+                int from = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for (int d = 0; d < 4; d += 1) {
+                    int to = from, m = from * NUM_SQUARES;
+                    for (int k = reach(from, d); k > 0; k -= 1) {
+                        to += STEP[d];
+                        moves[n] = m + to;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Store the Move.index() values of the tactical moves on the current
+     * board for SIDE (ignoring whose turn it is) in MOVES, and return how
+     * many there are: the moves that capture, and, for white, the king's
+     * moves to an edge or across its path onto a square with an open lane
+     * to an edge.  MOVES must have room for MAX_MOVES values.  Generates
+     * the captures backward from the empty squares next to the other
+     * side's pieces, and so costs much less than filtering all legal
+     * moves.
+     */
+    int tacticalMoves(Piece side, int[] moves) {
+        int n = 0;
+        int king = -1;
+        if (side != BLACK && _king != null) {
+            king = _king.index();
+            for (int d = 0; d < 4; d += 1) {
+                int to = king;
+                for (int k = reach(king, d); k > 0; k -= 1) {
+                    to += STEP[d];
+                    if (isKingThreat(to, d) || isCapture(king, to)) {
+                        moves[n] = king * NUM_SQUARES + to;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        Piece other = side == BLACK ? WHITE : BLACK;
+        long near = 0, far = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            long bits = other == BLACK ? _bits[BLACK_BITS + w]
+                : _bits[WHITE_BITS + w] | _bits[KING_BITS + w];
+            while (bits != 0) {
+                int i = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                near |= NEIGHBORS[i * WORDS];
+                far |= NEIGHBORS[i * WORDS + 1];
+            }
+        }
+        for (int w = 0; w < WORDS; w += 1) {
+            long bits = (w == 0 ? near : far) & ~occupancy(w);
+            while (bits != 0) {
+                int to = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for (int d = 0; d < 4; d += 1) {
+                    int k = reach(to, d);
+                    if (k == ROOK_SQUARES[to][d].size()) {
+                        continue;
+                    }
+                    int from = to + (k + 1) * STEP[d];
+                    if (from != king && occupiedBy(side, from)
+                        && isCapture(from, to)) {
+                        moves[n] = from * NUM_SQUARES + to;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return true iff the king, arriving on the square with index TO by
+     * moving in direction DIR, reaches an edge or has an open lane to one
+     * across its path.  (A lane straight ahead would let it reach the edge
+     * directly, and the lane behind it is the one it came along.)
+     */
+    private boolean isKingThreat(int to, int dir) {
+        if (sq(to).isEdge()) {
+            return true;
+        }
+        for (int d = (dir + 1) & 1; d < 4; d += 2) {
+            if (reach(to, d) == ROOK_SQUARES[to][d].size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Return true iff SIDE has a legal move.
      */
     boolean hasMove(Piece side) {
         /** FIXME */
-        return legalMoves(side).size() != 0;
+        assert (mobility(side) > 0) == canStep(side);
+        return mobility(side) > 0;
+    }
+
+    /**
+     * Return the number of pairs of a piece on SIDE and an empty square
+     * next to it: the number of one-square moves SIDE could make.  This
+     * count is maintained by put, so it costs nothing to read.
+     */
+    int mobility(Piece side) {
+        return _mobility[side == BLACK ? 1 : 0];
+    }
+
+    /**
+     * Return the number of pieces P (not counting the king if P is WHITE)
+     * on the board, maintained by put.
+     */
+    int pieceCount(Piece p) {
+        return _pieceCounts[p.ordinal()];
+    }
+
+    /**
+     * Return a set of squares containing SQUARES, in the form that count
+     * expects.
+     */
+    static long[] squareSet(Iterable<Square> squares) {
+        long[] set = new long[WORDS];
+        for (Square sq : squares) {
+            set[sq.index() >>> WORD_SHIFT] |= 1L << sq.index();
+        }
+        return set;
+    }
+
+    /**
+     * Return the number of pieces of SIDE (including the king, if SIDE is
+     * WHITE) on the squares in SET, as made by squareSet.
+     */
+    int count(Piece side, long[] set) {
+        int n = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            long bits = side == BLACK ? _bits[BLACK_BITS + w]
+                : _bits[WHITE_BITS + w] | _bits[KING_BITS + w];
+            n += Long.bitCount(bits & set[w]);
+        }
+        return n;
+    }
+
+    /**
+     * Return true iff some piece on SIDE has an empty square next to it,
+     * stopping at the first such piece.  Equivalent to mobility(SIDE) > 0,
+     * but computed from scratch.
+     */
+    private boolean canStep(Piece side) {
+        for (int w = 0; w < WORDS; w += 1) {
+            long bits = side == BLACK ? _bits[BLACK_BITS + w]
+                : _bits[WHITE_BITS + w] | _bits[KING_BITS + w];
+            while (bits != 0) {
+                int i = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (((NEIGHBORS[i * WORDS] & ~occupancy(0))
+                     | (NEIGHBORS[i * WORDS + 1] & ~occupancy(1))) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -480,20 +997,41 @@ class Board {
     /**
      * Return the locations of all pieces on SIDE.
      */
-    private HashSet<Square> pieceLocations(Piece side) {
+    private SqList pieceLocations(Piece side) {
         /** FIXME */
         assert side != EMPTY;
-        HashSet<Square> hashset = new HashSet<Square>();
-        for (Square sq : _board.keySet()) {
-            if (get(sq).side() == side) {
-                hashset.add(sq);
+        SqList result = new SqList();
+        for (int w = 0; w < WORDS; w += 1) {
+            long bits = side == BLACK ? _bits[BLACK_BITS + w]
+                : _bits[WHITE_BITS + w] | _bits[KING_BITS + w];
+            while (bits != 0) {
+                result.add(sq(w * Long.SIZE
+                              + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
             }
         }
-        return hashset;
+        return result;
+    }
+
+    /**
+     * Return the offset in _bits of the bit set for pieces P (WHITE,
+     * BLACK, or KING).
+     */
+    private static int bitsOf(Piece p) {
+        switch (p) {
+        case WHITE:
+            return WHITE_BITS;
+        case BLACK:
+            return BLACK_BITS;
+        case KING:
+            return KING_BITS;
+        default:
+            throw error("no bit set for %s", p);
+        }
     }
 
     /**
-     * Return the contents of _board in the order of SQUARE_LIST as a sequence
+     * Return the contents of the board in the order of SQUARE_LIST as a sequence
      * of characters: the toString values of the current turn and Pieces.
      */
     String encodedBoard() {
@@ -505,6 +1043,15 @@ class Board {
         return new String(result);
     }
 
+    /**
+     * Return a 64-bit hash of the current position (the contents of the
+     * board and the side to move).  Equal positions have equal keys, and
+     * unequal positions almost always have unequal keys.
+     */
+    long positionKey() {
+        return _key;
+    }
+
     /**
      * Piece whose turn it is (WHITE or BLACK).
      */
@@ -524,21 +1071,217 @@ class Board {
     private boolean _repeated;
 
     /**
-     * initialize board.
+     * Number of 64-bit words in the bit set for one kind of piece.
+     */
+    private static final int WORDS = (NUM_SQUARES + Long.SIZE - 1) / Long.SIZE;
+    /**
+     * Log2 of the number of bits in a word.
+     */
+    private static final int WORD_SHIFT = 6;
+    /**
+     * Offsets in _bits of the bit sets for white pieces, black pieces,
+     * and the king.
+     */
+    private static final int
+        WHITE_BITS = 0,
+        BLACK_BITS = WORDS,
+        KING_BITS = 2 * WORDS;
+    /**
+     * Total length of _bits.
+     */
+    private static final int BITS_LENGTH = 3 * WORDS;
+
+    /**
+     * STEP[d] is the change in square index for one step in direction D
+     * (as for Square.rookMove).
+     */
+    private static final int[] STEP = { SIZE, 1, -SIZE, -1 };
+
+    /**
+     * Bit sets of the squares on each ray: the WORDS words starting at
+     * RAYS[(I * 4 + D) * WORDS] are the squares in ROOK_SQUARES[I][D].
+     */
+    private static final long[] RAYS = new long[NUM_SQUARES * 4 * WORDS];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                for (Square sq : ROOK_SQUARES[i][d]) {
+                    int k = sq.index();
+                    RAYS[(i * 4 + d) * WORDS + (k >>> WORD_SHIFT)] |= 1L << k;
+                }
+            }
+        }
+    }
+
+    /**
+     * Bit sets of the squares orthogonally adjacent to each square: the
+     * WORDS words starting at NEIGHBORS[I * WORDS] are those next to the
+     * square with index I.
+     */
+    private static final long[] NEIGHBORS = new long[NUM_SQUARES * WORDS];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                Square sq = sq(i).rookMove(d, 1);
+                if (sq != null) {
+                    int k = sq.index();
+                    NEIGHBORS[i * WORDS + (k >>> WORD_SHIFT)] |= 1L << k;
+                }
+            }
+        }
+    }
+
+    /**
+     * Mask of the four squares orthogonally adjacent to THRONE (all of
+     * which lie in the first word of a bit set).
+     */
+    private static final long THRONE_NEIGHBORS =
+        (1L << NTHRONE.index()) | (1L << STHRONE.index())
+        | (1L << WTHRONE.index()) | (1L << ETHRONE.index());
+
+    /**
+     * Index of THRONE.
+     */
+    private static final int THRONE_INDEX = THRONE.index();
+
+    /**
+     * Capture geometry for a piece arriving on the square with index I, in
+     * direction D (as for Square.rookMove), at index I * 4 + D: the
+     * indices of the square next to it (the potential victim) and of the
+     * square beyond that (the partner), or -1 if the partner is off the
+     * board; and, when the victim square is the throne or next to it,
+     * where the king needs hostile squares on all four sides, the indices
+     * of the victim's two other neighbors, or -1 elsewhere.
+     */
+    private static final int[]
+        CAPTURE_VICTIM = new int[NUM_SQUARES * 4],
+        CAPTURE_PARTNER = new int[NUM_SQUARES * 4],
+        CAPTURE_DIAG1 = new int[NUM_SQUARES * 4],
+        CAPTURE_DIAG2 = new int[NUM_SQUARES * 4];
+
+    static {
+        long fortress = THRONE_NEIGHBORS | (1L << THRONE_INDEX);
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                int k = i * 4 + d;
+                Square sq0 = sq(i), sq2 = sq0.rookMove(d, 2);
+                CAPTURE_VICTIM[k] = CAPTURE_PARTNER[k] = -1;
+                CAPTURE_DIAG1[k] = CAPTURE_DIAG2[k] = -1;
+                if (sq2 == null) {
+                    continue;
+                }
+                int victim = sq0.between(sq2).index();
+                CAPTURE_VICTIM[k] = victim;
+                CAPTURE_PARTNER[k] = sq2.index();
+                if (victim >>> WORD_SHIFT == 0
+                    && (fortress & (1L << victim)) != 0) {
+                    CAPTURE_DIAG1[k] = sq0.diag1(sq2).index();
+                    CAPTURE_DIAG2[k] = sq0.diag2(sq2).index();
+                }
+            }
+        }
+    }
+
+    /**
+     * The contents of the board, as one bit set per kind of piece.  The
+     * square with index I is bit I % 64 of word I / 64 in each set; the
+     * sets start at WHITE_BITS, BLACK_BITS, and KING_BITS.
      */
-    private HashMap<Square, Piece> _board;
+    private final long[] _bits = new long[BITS_LENGTH];
     /**
      * set the limit of the board.
      */
     private int _limit = Integer.MAX_VALUE;
     /**
-     * set the previous undo object.
+     * Initial capacity of _journal.
+     */
+    private static final int INITIAL_JOURNAL_SIZE = 64;
+    /**
+     * Layout of a _journal entry: the from and to square indices of the
+     * move, the ordinals of the moved piece, the pieces captured to the
+     * north, east, south, and west of TO (2 bits each, EMPTY for none), and
+     * the prior winner (0 for none), followed by the prior repeated flag.
+     */
+    private static final int
+        SQUARE_MASK = (1 << 7) - 1,
+        TO_SHIFT = 7,
+        MOVED_SHIFT = 14,
+        CAPTURED_SHIFT = 16,
+        WINNER_SHIFT = 24,
+        REPEATED_SHIFT = 26;
+    /**
+     * All Pieces, indexed by ordinal.
+     */
+    private static final Piece[] PIECES = Piece.values();
+    /**
+     * The moves made since the initial position (or the last clearUndo),
+     * one packed entry per move, so that undo can reverse each of them.
+     */
+    private int[] _journal;
+    /**
+     * Number of entries in _journal.
+     */
+    private int _journalSize;
+    /**
+     * Zobrist keys: ZOBRIST[p][i] is a random value XORed into the position
+     * key when piece P (by ordinal) occupies the square with index I.
+     */
+    private static final long[][] ZOBRIST = new long[PIECES.length][];
+    /**
+     * Random value XORed into the position key when white is to move.
+     */
+    private static final long WHITE_TO_MOVE;
+
+    static {
+        Random keys = new Random(0x7AB1E7L);
+        for (Piece p : PIECES) {
+            ZOBRIST[p.ordinal()] = new long[NUM_SQUARES];
+            if (p != EMPTY) {
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    ZOBRIST[p.ordinal()][i] = keys.nextLong();
+                }
+            }
+        }
+        WHITE_TO_MOVE = keys.nextLong();
+    }
+
+    /**
+     * True iff at least three squares next to THRONE hold black pieces, so
+     * that an occupied throne is hostile to white, maintained by put.
+     */
+    private boolean _throneHostile;
+    /**
+     * Location of the king (or of one of them, in an edited position with
+     * several), or null if it has been captured, maintained by put.
+     */
+    private Square _king;
+    /**
+     * Mobility counts (as for mobility()) for white, including the king,
+     * and for black, maintained by put.
+     */
+    private final int[] _mobility = new int[2];
+    /**
+     * Number of squares holding each kind of piece, indexed by ordinal,
+     * maintained by put.
+     */
+    private final int[] _pieceCounts = new int[PIECES.length];
+    /**
+     * Zobrist key of the current position, maintained by put and by
+     * changes of turn.
+     */
+    private long _key;
+    /**
+     * Keys of the positions that preceded each move not yet undone, for
+     * detecting repeated positions.
      */
-    private Stack<Object> _undo;
+    private LongMultiset _positions;
     /**
-     * set the encodedboard of the board.
+     * True iff _journal and _positions may be shared with another board
+     * (see snapshot()).
      */
-    private HashSet<String> _encodedboard;
+    private boolean _shared;
 
 }
 
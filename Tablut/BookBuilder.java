@@ -0,0 +1,109 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static tablut.Piece.*;
+
+/** Builds an opening book (see OpeningBook) by self-play: plays a number
+ *  of games between two AIs for a given number of plies, recording the
+ *  move the AI finds in each position reached.  To vary the games, each
+ *  game after the first makes one randomly chosen move at a random ply.
+ *  Usage:
+ *      java tablut.BookBuilder FILE [GAMES [PLIES [MILLIS]]]
+ *  where MILLIS is the AI's time budget per move.
+ *  @author Wen Zeng
+ */
+public class BookBuilder {
+
+    /** Defaults for the number of games, plies per game, and per-move
+     *  time budget. */
+    private static final int
+        DEFAULT_GAMES = 20, DEFAULT_PLIES = 8, DEFAULT_MILLIS = 500;
+
+    /** Seed for the random deviations from the AI's choices. */
+    private static final long SEED = 0x7AB1E7L;
+
+    /** Build the book described by ARGS. */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: java tablut.BookBuilder FILE"
+                               + " [GAMES [PLIES [MILLIS]]]");
+            System.exit(1);
+        }
+        int games = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_GAMES;
+        int plies = args.length > 2 ? Integer.parseInt(args[2])
+            : DEFAULT_PLIES;
+        int millis = args.length > 3 ? Integer.parseInt(args[3])
+            : DEFAULT_MILLIS;
+        BookBuilder builder = new BookBuilder(millis);
+        for (int g = 0; g < games; g += 1) {
+            builder.play(plies, g == 0 ? -1 : builder._random.nextInt(plies));
+        }
+        try {
+            builder.write(args[0]);
+        } catch (IOException excp) {
+            System.err.printf("Could not write %s: %s%n", args[0],
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A builder whose AIs search for MILLIS milliseconds per move. */
+    BookBuilder(long millis) {
+        Controller control =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(), false);
+        control.setMoveTime(WHITE, millis);
+        control.setMoveTime(BLACK, millis);
+        _white = new AI(WHITE, control);
+        _black = new AI(BLACK, control);
+    }
+
+    /** Play one game of PLIES plies from the initial position, recording
+     *  moves not already in the book, but making a random move instead of
+     *  the book's or AI's at ply DEVIATION. */
+    void play(int plies, int deviation) {
+        Board board = new Board();
+        for (int ply = 0; ply < plies && board.winner() == null; ply += 1) {
+            long key = board.positionKey();
+            Move move;
+            if (ply == deviation) {
+                List<Move> moves = board.legalMoves(board.turn());
+                move = moves.get(_random.nextInt(moves.size()));
+            } else if (_moves.containsKey(key)) {
+                move = Move.mv(_moves.get(key));
+            } else {
+                AI player = board.turn() == WHITE ? _white : _black;
+                move = player.findMove(board);
+                _moves.put(key, move.index());
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /** Write the moves recorded so far to book file FILENAME. */
+    void write(String fileName) throws IOException {
+        long[] keys = new long[_moves.size()];
+        int[] moves = new int[keys.length];
+        int n = 0;
+        for (long key : _moves.keySet()) {
+            keys[n] = key;
+            moves[n] = _moves.get(key);
+            n += 1;
+        }
+        OpeningBook.write(fileName, keys, moves, n);
+        System.out.printf("%d positions written to %s%n", n, fileName);
+    }
+
+    /** The AIs that choose the moves. */
+    private final AI _white, _black;
+    /** Source of deviations. */
+    private final Random _random = new Random(SEED);
+    /** Maps the keys of positions reached to the indices of the moves
+     *  recorded for them. */
+    private final HashMap<Long, Integer> _moves = new HashMap<>();
+}
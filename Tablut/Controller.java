@@ -1,8 +1,12 @@
 package tablut;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.function.Consumer;
@@ -23,14 +27,26 @@ final class Controller {
      *  to report moves, wins, and errors to user. If LOGFILE is
      *  non-null, copies all commands to it. If STRICT, exits the
      *  program with non-zero code on receiving an erroneous move from a
-     *  player. */
+     *  player.  Reads commands from the standard input and writes prompts
+     *  and dumps to the standard output. */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+             autoPlayerTemplate, strict, System.in, System.out);
+    }
+
+    /** As for the six-argument constructor, with VIEW, LOGFILE, REPORTER,
+     *  MANUALPLAYERTEMPLATE, AUTOPLAYERTEMPLATE, and STRICT, but reading
+     *  commands from INPUT and writing prompts and dumps to OUTPUT. */
+    Controller(View view, PrintStream logFile, Reporter reporter,
+               Player manualPlayerTemplate, Player autoPlayerTemplate,
+               boolean strict, InputStream input, PrintStream output) {
         _view = view;
         _playing = false;
         _logFile = logFile;
-        _input = new Scanner(System.in);
+        _input = new Scanner(input);
+        _output = output;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
@@ -45,6 +61,9 @@ final class Controller {
         _playing = true;
         _winner = null;
         _board.init();
+        _record.clear();
+        _recording = true;
+        notifyPlayers(null);
         while (_playing) {
             _view.update(this);
             String command;
@@ -69,11 +88,37 @@ final class Controller {
                 }
             }
         }
+        _white.stop();
+        _black.stop();
+        if (_endgames != null) {
+            try {
+                _endgames.save();
+            } catch (IOException excp) {
+                reportError("Could not save endgame cache: %s",
+                            excp.getMessage());
+            }
+        }
+        if (_recordFile != null && _recording) {
+            _record.setHeader(_board.moveLimit(), _seed);
+            try {
+                _record.write(_recordFile);
+            } catch (IOException excp) {
+                reportError("Could not write game record: %s",
+                            excp.getMessage());
+            }
+        }
         if (_logFile != null) {
             _logFile.close();
         }
     }
 
+    /** Tell both players that MOVE has just been made (or, if MOVE is
+     *  null, that the position has otherwise changed). */
+    private void notifyPlayers(Move move) {
+        _white.moveMade(move);
+        _black.moveMade(move);
+    }
+
     /** Return the current board.  The value returned should not be
      *  modified. */
     Board board() {
@@ -92,6 +137,7 @@ final class Controller {
      *  with the value SEED. Identical seeds produce identical sequences.
      *  Initially, the PRNG is randomly seeded. */
     void setSeed(long seed) {
+        _seed = seed;
         _randGen.setSeed(seed);
     }
 
@@ -100,8 +146,8 @@ final class Controller {
      *  leading and trailing whitespace. First issues a prompt iff PROMPT. */
     String readLine(boolean prompt) {
         if (prompt) {
-            System.out.print("> ");
-            System.out.flush();
+            _output.print("> ");
+            _output.flush();
         }
         if (_input.hasNextLine()) {
             return _input.nextLine().trim();
@@ -110,6 +156,184 @@ final class Controller {
         }
     }
 
+    /** Return the time budget, in milliseconds, for each move made by an
+     *  automated player on SIDE, or 0 if such moves are searched to a
+     *  fixed depth instead. */
+    long moveTime(Piece side) {
+        return side == WHITE ? _whiteMoveTime : _blackMoveTime;
+    }
+
+    /** Set the time budget for each move made by an automated player on
+     *  SIDE to MILLIS milliseconds (0 for a fixed-depth search). */
+    void setMoveTime(Piece side, long millis) {
+        if (millis < 0) {
+            throw error("negative time budget");
+        }
+        if (side == WHITE) {
+            _whiteMoveTime = millis;
+        } else {
+            _blackMoveTime = millis;
+        }
+    }
+
+    /** Return the number of threads automated players search with. */
+    int searchThreads() {
+        return _searchThreads;
+    }
+
+    /** Return true iff the threads of a parallel search share one
+     *  transposition table (rather than each having its own). */
+    boolean sharedTable() {
+        return _sharedTable;
+    }
+
+    /** Have automated players search with THREADS threads, which share
+     *  one transposition table iff SHARED.  With one thread, searches are
+     *  deterministic. */
+    void setSearchThreads(int threads, boolean shared) {
+        if (threads < 1) {
+            throw error("need at least one search thread");
+        }
+        if (threads > _maxSearchThreads) {
+            throw error("at most %d search threads allowed",
+                        _maxSearchThreads);
+        }
+        _searchThreads = threads;
+        _sharedTable = shared;
+    }
+
+    /** Refuse requests for more than MAX search threads (see
+     *  setSearchThreads) or, unless PONDERINGALLOWED, for pondering (see
+     *  setPondering), and reduce the current settings to fit. */
+    void restrictSearch(int max, boolean ponderingAllowed) {
+        if (max < 1) {
+            throw error("need at least one search thread");
+        }
+        _maxSearchThreads = max;
+        _searchThreads = Math.min(_searchThreads, max);
+        _ponderingAllowed = ponderingAllowed;
+        _pondering &= ponderingAllowed;
+    }
+
+    /** Return the pool on which automated players run their searches, or
+     *  null if they search on the thread that asks for their moves. */
+    ExecutorService computePool() {
+        return _computePool;
+    }
+
+    /** Have automated players run their searches on POOL (null to search
+     *  on the thread that asks for their moves). */
+    void setComputePool(ExecutorService pool) {
+        _computePool = pool;
+    }
+
+    /** Return the base-2 logarithm of the number of entries in the
+     *  transposition tables of automated players. */
+    int tableLogSize() {
+        return _tableLogSize;
+    }
+
+    /** Have automated players that have not yet searched allocate
+     *  transposition tables of 2**LOGSIZE entries. */
+    void setTableLogSize(int logSize) {
+        if (logSize < 1 || logSize > MAX_TABLE_LOG_SIZE) {
+            throw error("bad transposition table size");
+        }
+        _tableLogSize = logSize;
+    }
+
+    /** Return the evaluation function automated players on SIDE use. */
+    Evaluator evaluator(Piece side) {
+        return side == WHITE ? _whiteEvaluator : _blackEvaluator;
+    }
+
+    /** Have automated players on both sides evaluate positions with
+     *  EVALUATOR. */
+    void setEvaluator(Evaluator evaluator) {
+        setEvaluator(WHITE, evaluator);
+        setEvaluator(BLACK, evaluator);
+    }
+
+    /** Have automated players on SIDE evaluate positions with
+     *  EVALUATOR. */
+    void setEvaluator(Piece side, Evaluator evaluator) {
+        if (side == WHITE) {
+            _whiteEvaluator = evaluator;
+        } else {
+            _blackEvaluator = evaluator;
+        }
+    }
+
+    /** Return the registry to which automated players publish the
+     *  statistics of their searches. */
+    Metrics metrics() {
+        return _metrics;
+    }
+
+    /** Return true iff automated players should report the statistics of
+     *  each search as a note. */
+    boolean reportingStats() {
+        return _reportingStats;
+    }
+
+    /** Have automated players report the statistics of each search iff
+     *  ON. */
+    void setReportingStats(boolean on) {
+        _reportingStats = on;
+    }
+
+    /** Return the totals of the searches made by automated players on
+     *  SIDE. */
+    MoveStats moveStats(Piece side) {
+        return side == WHITE ? _whiteStats : _blackStats;
+    }
+
+    /** Return the opening book automated players consult, or null if
+     *  none. */
+    OpeningBook openingBook() {
+        return _openingBook;
+    }
+
+    /** Have automated players consult BOOK (null for none) before
+     *  searching. */
+    void setOpeningBook(OpeningBook book) {
+        _openingBook = book;
+    }
+
+    /** Return the cache of solved endgame positions automated players
+     *  consult and add to, or null if none. */
+    EndgameCache endgameCache() {
+        return _endgames;
+    }
+
+    /** Have automated players use ENDGAMES (null for none) as their cache
+     *  of solved endgame positions.  It is saved when play ends. */
+    void setEndgameCache(EndgameCache endgames) {
+        _endgames = endgames;
+    }
+
+    /** When play ends, write the moves of the last game, if it was played
+     *  from the initial position, to the file FILENAME (null for none) as
+     *  a GameRecord. */
+    void setRecordFile(String fileName) {
+        _recordFile = fileName;
+    }
+
+    /** Return true iff automated players should search while waiting for
+     *  their opponents' moves. */
+    boolean pondering() {
+        return _pondering;
+    }
+
+    /** Have automated players search on their opponents' time iff
+     *  PONDERING. */
+    void setPondering(boolean pondering) {
+        if (pondering && !_ponderingAllowed) {
+            throw error("pondering is not allowed");
+        }
+        _pondering = pondering;
+    }
+
     /** Return true iff white is a manual player. */
     boolean manualWhite() {
         return _white.isManual();
@@ -135,6 +359,13 @@ final class Controller {
         _reporter.reportMove(move);
     }
 
+    /** Return true iff I have a log, so that logComment prints.  Callers
+     *  that log often check this first, to avoid building the arguments
+     *  for nothing. */
+    boolean logging() {
+        return _logFile != null;
+    }
+
     /** Print a comment in the log.  The arguments FORMAT and ARGS are
      *  as for String.format. */
     void logComment(String format, Object... args) {
@@ -173,12 +404,18 @@ final class Controller {
         new Command("manual\\s+(white|black)$", this::doManual),
         new Command("auto\\s+(white|black)$", this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("time\\s+(?:(white|black)\\s+)?(\\d+)$", this::doTime),
+        new Command("threads\\s+(\\d+)(?:\\s+(shared|private))?$",
+                    this::doThreads),
+        new Command("ponder\\s+(on|off)$", this::doPonder),
+        new Command("stats(?:\\s+(on|off))?$", this::doStats),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
 
-    /** A Matcher whose Pattern matches comments. */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+    /** A Matcher whose Pattern matches comments.  Each Controller has its
+     *  own, so that several may run at once. */
+    private final Matcher _comment = Pattern.compile("#.*").matcher("");
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
      *  so, raising an IllegalArgumentException otherwise. */
@@ -188,8 +425,8 @@ final class Controller {
             _logFile.flush();
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+        _comment.reset(cmnd);
+        cmnd = _comment.replaceFirst("").trim().toLowerCase();
 
         if (cmnd.isEmpty()) {
             return;
@@ -207,39 +444,39 @@ final class Controller {
     /** Command "new". */
     private void doNew(Matcher unused) {
         _board.init();
+        _record.clear();
+        _recording = true;
         _winner = null;
+        notifyPlayers(null);
     }
 
     /** Command "manual <color>", where <color> is COLOR.group(1). */
     private void doManual(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
-            _black = _manualPlayerTemplate.create(BLACK, this);
-            break;
-        case "white":
-            _white = _manualPlayerTemplate.create(WHITE, this);
-            break;
-        default:
-            assert false;
-        }
+        setManual(color.group(1).equals("white") ? WHITE : BLACK, true);
         _view.update(this);
     }
 
     /** Command "auto <color>", where <color> is COLOR.group(1). */
     private void doAuto(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
-            break;
-        case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
-            break;
-        default:
-            assert false;
-        }
+        setManual(color.group(1).equals("white") ? WHITE : BLACK, false);
         _view.update(this);
     }
 
+    /** Have SIDE (WHITE or BLACK) played by a new player made from the
+     *  manual player template iff MANUAL, and otherwise from the automated
+     *  player template. */
+    void setManual(Piece side, boolean manual) {
+        Player template =
+            manual ? _manualPlayerTemplate : _autoPlayerTemplate;
+        if (side == WHITE) {
+            _white.stop();
+            _white = template.create(WHITE, this);
+        } else {
+            _black.stop();
+            _black = template.create(BLACK, this);
+        }
+    }
+
     /** Command "toggle". The first group of MAT is a square designation.
      *  The contents of the square are modified:
      *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
@@ -255,6 +492,8 @@ final class Controller {
         }
         _board.put(piece, sq);
         _board.clearUndo();
+        _recording = false;
+        notifyPlayers(null);
     }
 
     /** Command "quit". */
@@ -275,14 +514,68 @@ final class Controller {
     private void doLimit(Matcher mat) {
         try {
             _board.setMoveLimit(Integer.parseInt(mat.group(1)));
+            notifyPlayers(null);
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "time [<color>] N", where <color> is the optional first
+     *  group of MAT and N, the second, is a per-move time budget in
+     *  milliseconds for automated players of that color (or both). */
+    private void doTime(Matcher mat) {
+        long millis;
+        try {
+            millis = Long.parseLong(mat.group(2));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (mat.group(1) == null || mat.group(1).equals("white")) {
+            setMoveTime(WHITE, millis);
+        }
+        if (mat.group(1) == null || mat.group(1).equals("black")) {
+            setMoveTime(BLACK, millis);
+        }
+    }
+
+    /** Command "threads N [shared|private]", where N is the first group
+     *  of MAT and the optional second group says whether the threads share
+     *  a transposition table (the default). */
+    private void doThreads(Matcher mat) {
+        try {
+            setSearchThreads(Integer.parseInt(mat.group(1)),
+                             !"private".equals(mat.group(2)));
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
+    /** Command "ponder on|off", the setting being the first group of
+     *  MAT. */
+    private void doPonder(Matcher mat) {
+        setPondering(mat.group(1).equals("on"));
+    }
+
+    /** Command "stats [on|off]".  If the first group of MAT is present,
+     *  turns reports of search statistics on or off; otherwise, reports
+     *  the current values of all metrics. */
+    private void doStats(Matcher mat) {
+        if (mat.group(1) != null) {
+            setReportingStats(mat.group(1).equals("on"));
+        } else {
+            for (Map.Entry<String, Long> metric
+                     : _metrics.snapshot().entrySet()) {
+                reportNote("%s = %d", metric.getKey(), metric.getValue());
+            }
+        }
+    }
+
     /** Execute a move command matched in MAT. */
     private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
+        Move move = Move.mv(mat.group(0));
+        _board.makeMove(move);
+        _record.add(move);
+        notifyPlayers(move);
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
@@ -292,9 +585,9 @@ final class Controller {
         }
     }
 
-    /** Dump the contents of the board on standard output. */
+    /** Dump the contents of the board on my output. */
     private void doDump(Matcher unused) {
-        System.out.printf("===%n%s===%n", _board);
+        _output.printf("===%n%s===%n", _board);
     }
 
     /** Undo back to before my last move, if there was one (otherwise does
@@ -303,7 +596,10 @@ final class Controller {
         if (_board.moveCount() > 1) {
             _board.undo();
             _board.undo();
+            _record.removeLast();
+            _record.removeLast();
             _winner = null;
+            notifyPlayers(null);
             _view.update(this);
         }
     }
@@ -311,6 +607,56 @@ final class Controller {
     /** The board. */
     private Board _board = new Board();
 
+    /** Per-move time budgets, in milliseconds, for automated white and
+     *  black players (0 for fixed-depth search). */
+    private long _whiteMoveTime, _blackMoveTime;
+
+    /** Number of threads automated players search with. */
+    private int _searchThreads = 1;
+
+    /** Largest number of search threads allowed. */
+    private int _maxSearchThreads = Integer.MAX_VALUE;
+
+    /** True iff pondering may be turned on. */
+    private boolean _ponderingAllowed = true;
+
+    /** True iff parallel search threads share a transposition table. */
+    private boolean _sharedTable = true;
+
+    /** Pool for automated players' searches, or null. */
+    private ExecutorService _computePool;
+
+    /** Largest value of _tableLogSize. */
+    private static final int MAX_TABLE_LOG_SIZE = 28;
+
+    /** Base-2 logarithm of the size of automated players' transposition
+     *  tables. */
+    private int _tableLogSize = AI.TABLE_LOG_SIZE;
+
+    /** Opening book for automated players, or null. */
+    private OpeningBook _openingBook;
+
+    /** Cache of solved endgames for automated players, or null. */
+    private EndgameCache _endgames;
+
+    /** Evaluation functions for automated white and black players. */
+    private Evaluator _whiteEvaluator = new Evaluator(),
+        _blackEvaluator = _whiteEvaluator;
+
+    /** Registry of search metrics. */
+    private final Metrics _metrics = new Metrics();
+
+    /** True iff automated players report the statistics of each
+     *  search. */
+    private boolean _reportingStats;
+
+    /** Search totals for automated white and black players. */
+    private final MoveStats _whiteStats = new MoveStats(),
+        _blackStats = new MoveStats();
+
+    /** True iff automated players search on their opponents' time. */
+    private boolean _pondering;
+
     /** The winning side of the current game. */
     private Piece _winner;
 
@@ -320,8 +666,22 @@ final class Controller {
     /** The object that is displaying the current game. */
     private View _view;
 
+    /** The seed of _randGen. */
+    private long _seed = new Random().nextLong();
+
     /** My pseudo-random number generator. */
-    private Random _randGen = new Random();
+    private Random _randGen = new Random(_seed);
+
+    /** The moves of the current game. */
+    private final GameRecord _record = new GameRecord();
+
+    /** True iff _record holds the current game: that is, its position has
+     *  not been edited. */
+    private boolean _recording;
+
+    /** File to which the last game is written when play ends, or
+     *  null. */
+    private String _recordFile;
 
     /** Log file, or null if absent. */
     private PrintStream _logFile;
@@ -329,6 +689,9 @@ final class Controller {
     /** Input source. */
     private Scanner _input;
 
+    /** Destination of prompts and dumps. */
+    private PrintStream _output;
+
     /** The current White and Black players, each created from
      *  _autoPlayerTemplate or _manualPlayerTemplate. */
     private Player _white, _black;
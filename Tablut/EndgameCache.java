@@ -0,0 +1,74 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+/** A record of winning moves in positions with few attackers left,
+ *  indexed by position key and kept between runs in a file with the
+ *  format of an OpeningBook.  Positions are added as searches solve them,
+ *  and the file is rewritten by save.
+ *  @author Wen Zeng
+ */
+final class EndgameCache {
+
+    /** Most black pieces in a position that I record. */
+    static final int MAX_ATTACKERS = 6;
+
+    /** A cache kept in file FILENAME, initially containing the contents
+     *  of that file if it exists. */
+    EndgameCache(String fileName) throws IOException {
+        _fileName = fileName;
+        if (new File(fileName).exists()) {
+            OpeningBook saved = OpeningBook.load(fileName);
+            for (int k = 0; k < saved.size(); k += 1) {
+                _moves.put(saved.key(k), saved.move(k));
+            }
+        }
+    }
+
+    /** Return the number of positions in me. */
+    int size() {
+        return _moves.size();
+    }
+
+    /** Return the index of the winning move recorded for the position
+     *  whose key is KEY, or TranspositionTable.NO_MOVE if there is
+     *  none. */
+    int find(long key) {
+        return _moves.getOrDefault(key, TranspositionTable.NO_MOVE);
+    }
+
+    /** Record that the move with index MOVE wins for the side to move in
+     *  BOARD, if BOARD has few enough attackers to be worth recording. */
+    void record(Board board, int move) {
+        if (board.pieceCount(Piece.BLACK) <= MAX_ATTACKERS
+            && _moves.put(board.positionKey(), move) == null) {
+            _changed = true;
+        }
+    }
+
+    /** Write my contents to my file, if they have changed. */
+    void save() throws IOException {
+        if (!_changed) {
+            return;
+        }
+        long[] keys = new long[_moves.size()];
+        int[] moves = new int[keys.length];
+        int n = 0;
+        for (long key : _moves.keySet()) {
+            keys[n] = key;
+            moves[n] = _moves.get(key);
+            n += 1;
+        }
+        OpeningBook.write(_fileName, keys, moves, n);
+        _changed = false;
+    }
+
+    /** Name of my file. */
+    private final String _fileName;
+    /** Maps position keys to the indices of winning moves. */
+    private final HashMap<Long, Integer> _moves = new HashMap<>();
+    /** True iff I have positions not yet saved. */
+    private boolean _changed;
+}
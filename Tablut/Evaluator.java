@@ -0,0 +1,147 @@
+package tablut;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static java.lang.Math.*;
+import static tablut.Piece.*;
+import static tablut.Board.SIZE;
+import static tablut.Square.*;
+import static tablut.Utils.error;
+
+/** A static evaluation function for Tablut positions: a weighted sum of
+ *  terms describing material and the king's prospects, positive when the
+ *  position favors white.  The weights default to the values in DEFAULTS
+ *  and may be overridden from a properties file whose keys are the term
+ *  names in TERMS.  Every term takes constant time: piece counts are
+ *  maintained by the board as moves are made and undone, and the king's
+ *  lanes and surroundings are read from its bit sets.
+ *  @author Wen Zeng
+ */
+final class Evaluator {
+
+    /** Names of the terms, in the order of their weights.  In turn: the
+     *  number of white pieces (not counting the king) and of black
+     *  pieces; the king's distance from the nearest edge; the number of
+     *  empty squares the king can move to; the number of lanes open from
+     *  the king to an edge; and the numbers of black pieces next to the
+     *  king and within two squares of it (in both directions). */
+    static final String[] TERMS = {
+        "white.pieces", "black.pieces", "king.edge", "king.mobility",
+        "king.lanes", "king.adjacent", "king.attackers"
+    };
+
+    /** Default weights, corresponding to TERMS. */
+    static final int[] DEFAULTS = { 20, -10, -8, 1, 40, -12, -3 };
+
+    /** An evaluator with the default weights. */
+    Evaluator() {
+        _weights = DEFAULTS.clone();
+    }
+
+    /** An evaluator whose weights are given by WEIGHTS, a mapping from
+     *  names in TERMS to integers, with DEFAULTS for missing terms. */
+    Evaluator(Properties weights) {
+        this();
+        for (String name : weights.stringPropertyNames()) {
+            int k = List.of(TERMS).indexOf(name);
+            if (k < 0) {
+                throw error("unknown evaluation term: %s", name);
+            }
+            try {
+                _weights[k] = Integer.parseInt(weights.getProperty(name)
+                                               .trim());
+            } catch (NumberFormatException excp) {
+                throw error("bad weight for %s", name);
+            }
+        }
+    }
+
+    /** Return an evaluator with the weights in the properties file
+     *  FILENAME. */
+    static Evaluator load(String fileName) throws IOException {
+        Properties weights = new Properties();
+        try (Reader input = new FileReader(fileName)) {
+            weights.load(input);
+        }
+        return new Evaluator(weights);
+    }
+
+    /** Return the weight of the term named NAME. */
+    int weight(String name) {
+        return _weights[List.of(TERMS).indexOf(name)];
+    }
+
+    /** Return the value of BOARD, which is positive if it favors white and
+     *  negative if it favors black. */
+    int score(Board board) {
+        int score = _weights[WHITE_PIECES] * board.pieceCount(WHITE)
+            + _weights[BLACK_PIECES] * board.pieceCount(BLACK);
+        Square king = board.kingPosition();
+        if (king == null) {
+            return score;
+        }
+        int i = king.index();
+        int edge = SIZE, mobility = 0, lanes = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            int reach = board.reach(king, dir);
+            edge = min(edge, EDGE_DISTANCE[i][dir]);
+            mobility += reach;
+            if (reach == EDGE_DISTANCE[i][dir]) {
+                lanes += 1;
+            }
+        }
+        return score + _weights[KING_EDGE] * edge
+            + _weights[KING_MOBILITY] * mobility
+            + _weights[KING_LANES] * lanes
+            + _weights[KING_ADJACENT] * board.count(BLACK, ADJACENT[i])
+            + _weights[KING_ATTACKERS] * board.count(BLACK, NEARBY[i]);
+    }
+
+    /** Indices of the terms in TERMS and _weights. */
+    private static final int
+        WHITE_PIECES = 0, BLACK_PIECES = 1, KING_EDGE = 2, KING_MOBILITY = 3,
+        KING_LANES = 4, KING_ADJACENT = 5, KING_ATTACKERS = 6;
+
+    /** EDGE_DISTANCE[i][d] is the number of squares between the square
+     *  with index I and the edge in direction D. */
+    private static final int[][] EDGE_DISTANCE = new int[NUM_SQUARES][4];
+
+    /** ADJACENT[i] and NEARBY[i] are the sets of squares (as for
+     *  Board.squareSet) orthogonally adjacent to the square with index I,
+     *  and within two rows and two columns of it. */
+    private static final long[][]
+        ADJACENT = new long[NUM_SQUARES][],
+        NEARBY = new long[NUM_SQUARES][];
+
+    static {
+        for (Square sq : SQUARE_LIST) {
+            int i = sq.index();
+            List<Square> adjacent = new ArrayList<>(),
+                nearby = new ArrayList<>();
+            for (int dir = 0; dir < 4; dir += 1) {
+                while (sq.rookMove(dir, EDGE_DISTANCE[i][dir] + 1) != null) {
+                    EDGE_DISTANCE[i][dir] += 1;
+                }
+                if (sq.rookMove(dir, 1) != null) {
+                    adjacent.add(sq.rookMove(dir, 1));
+                }
+            }
+            for (Square other : SQUARE_LIST) {
+                if (other != sq && abs(other.col() - sq.col()) <= 2
+                    && abs(other.row() - sq.row()) <= 2) {
+                    nearby.add(other);
+                }
+            }
+            ADJACENT[i] = Board.squareSet(adjacent);
+            NEARBY[i] = Board.squareSet(nearby);
+        }
+    }
+
+    /** Weights of the terms, in the order of TERMS. */
+    private final int[] _weights;
+}
@@ -0,0 +1,94 @@
+package tablut;
+
+import static tablut.Utils.error;
+
+/** Replays a GameRecord on a Board.  The board can be moved to any ply of
+ *  the game: forward by making the record's moves, and backward by
+ *  copying the position saved at the nearest earlier checkpoint and
+ *  replaying at most a checkpoint interval of moves from there.  The
+ *  positions at checkpoints are saved as they are first reached, and
+ *  their keys are checked against those in the record.
+ *  @author Wen Zeng
+ */
+final class GameReader {
+
+    /** A reader for RECORD, positioned at the start of the game. */
+    GameReader(GameRecord record) {
+        _record = record;
+        _board = new Board();
+        if (record.limit() != Integer.MAX_VALUE) {
+            _board.setMoveLimit(record.limit());
+        }
+        _saved = new Board[record.size() / record.interval() + 1];
+        _saved[0] = _board.snapshot();
+    }
+
+    /** Return the board showing the position at ply(). */
+    Board board() {
+        return _board;
+    }
+
+    /** Return the number of moves made on board(). */
+    int ply() {
+        return _ply;
+    }
+
+    /** Replay the whole game, leaving board() at its final position. */
+    void replay() {
+        seek(_record.size());
+    }
+
+    /** Move board() to the position after the first PLY moves of the
+     *  game, where 0 <= PLY <= the number of moves in my record. */
+    void seek(int ply) {
+        if (ply < 0 || ply > _record.size()) {
+            throw error("no ply %d in a game of %d moves", ply,
+                        _record.size());
+        }
+        int interval = _record.interval();
+        int k = Math.min(ply / interval, _reached);
+        if (ply < _ply || _ply < k * interval) {
+            _board.copy(_saved[k]);
+            _ply = k * interval;
+        }
+        while (_ply < ply) {
+            step();
+        }
+    }
+
+    /** Make the next move in my record on board(), saving the position if
+     *  it is at a checkpoint not reached before. */
+    private void step() {
+        Move move = Move.mv(_record.move(_ply));
+        if (move == null || _board.winner() != null
+            || !_board.isLegal(move)) {
+            throw error("illegal move at ply %d", _ply + 1);
+        }
+        _board.makeMove(move);
+        _ply += 1;
+        if (_ply % _record.interval() == 0) {
+            int k = _ply / _record.interval();
+            if (k <= _record.checkpoints()
+                && _record.checkpoint(k - 1) != _board.positionKey()) {
+                throw error("position at ply %d does not match record",
+                            _ply);
+            }
+            if (k > _reached) {
+                _saved[k] = _board.snapshot();
+                _reached = k;
+            }
+        }
+    }
+
+    /** The record I replay. */
+    private final GameRecord _record;
+    /** The board on which I replay it. */
+    private final Board _board;
+    /** Number of moves made on _board. */
+    private int _ply;
+    /** _saved[k] is the position after k checkpoint intervals of moves,
+     *  for 0 <= k <= _reached. */
+    private final Board[] _saved;
+    /** Index of the last checkpoint reached. */
+    private int _reached;
+}
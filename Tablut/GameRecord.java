@@ -0,0 +1,183 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static tablut.Utils.error;
+
+/** The moves of a game of Tablut played from the initial position, with
+ *  the game's move limit and random seed, kept in a compact binary file.
+ *  The file holds a magic number, the move limit, the seed, the number of
+ *  plies between checkpoints, and the number of moves; then each move's
+ *  code (see Move.code) as a short; then, as a check, the position key
+ *  (see Board.positionKey) after every CHECKPOINT_INTERVAL moves.  A
+ *  GameReader replays a record.
+ *  @author Wen Zeng
+ */
+final class GameRecord {
+
+    /** Number of plies between checkpoints in the records I write. */
+    static final int CHECKPOINT_INTERVAL = 32;
+
+    /** An empty record with no move limit and a seed of 0. */
+    GameRecord() {
+        this(CHECKPOINT_INTERVAL);
+    }
+
+    /** An empty record with checkpoints every INTERVAL plies. */
+    private GameRecord(int interval) {
+        _interval = interval;
+        _moves = new short[INITIAL_SIZE];
+        _limit = Integer.MAX_VALUE;
+    }
+
+    /** Return the record in file FILENAME. */
+    static GameRecord load(String fileName) throws IOException {
+        ByteBuffer data =
+            ByteBuffer.wrap(Files.readAllBytes(Paths.get(fileName)));
+        if (data.capacity() < HEADER_SIZE || data.getInt() != MAGIC) {
+            throw error("not a game record");
+        }
+        int limit = data.getInt();
+        long seed = data.getLong();
+        int interval = data.getInt(), n = data.getInt();
+        if (interval <= 0 || n < 0 || data.capacity()
+            != HEADER_SIZE + (long) n * Short.BYTES
+               + (long) (n / interval) * Long.BYTES) {
+            throw error("corrupted game record");
+        }
+        GameRecord result = new GameRecord(interval);
+        result.setHeader(limit, seed);
+        result._moves = new short[Math.max(n, INITIAL_SIZE)];
+        data.asShortBuffer().get(result._moves, 0, n);
+        result._size = n;
+        data.position(HEADER_SIZE + n * Short.BYTES);
+        result._keys = new long[n / interval];
+        data.asLongBuffer().get(result._keys);
+        return result;
+    }
+
+    /** Write me to file FILENAME, computing my checkpoints by replaying
+     *  my moves. */
+    void write(String fileName) throws IOException {
+        long[] keys = new long[_size / _interval];
+        Board board = new Board();
+        if (_limit != Integer.MAX_VALUE) {
+            board.setMoveLimit(_limit);
+        }
+        for (int k = 0; k < _size; k += 1) {
+            board.makeMove(move(k));
+            if ((k + 1) % _interval == 0) {
+                keys[k / _interval] = board.positionKey();
+            }
+        }
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_limit);
+            out.writeLong(_seed);
+            out.writeInt(_interval);
+            out.writeInt(_size);
+            for (int k = 0; k < _size; k += 1) {
+                out.writeShort(_moves[k]);
+            }
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+        }
+        _keys = keys;
+    }
+
+    /** Set my move limit (Integer.MAX_VALUE for none) to LIMIT and my
+     *  random seed to SEED. */
+    void setHeader(int limit, long seed) {
+        _limit = limit;
+        _seed = seed;
+    }
+
+    /** Return the game's move limit, or Integer.MAX_VALUE if none. */
+    int limit() {
+        return _limit;
+    }
+
+    /** Return the game's random seed. */
+    long seed() {
+        return _seed;
+    }
+
+    /** Return the number of plies between my checkpoints. */
+    int interval() {
+        return _interval;
+    }
+
+    /** Return the number of moves in me. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the index (see Move.index) of my Kth move. */
+    int move(int k) {
+        return _moves[k];
+    }
+
+    /** Return the number of my checkpoints, as of when I was last
+     *  written or loaded. */
+    int checkpoints() {
+        return _keys.length;
+    }
+
+    /** Return the position key after my first (K + 1) * interval() moves,
+     *  as of when I was last written or loaded. */
+    long checkpoint(int k) {
+        return _keys[k];
+    }
+
+    /** Add MOVE to the end of me. */
+    void add(Move move) {
+        if (_size == _moves.length) {
+            _moves = Arrays.copyOf(_moves, 2 * _moves.length);
+        }
+        _moves[_size] = move.code();
+        _size += 1;
+    }
+
+    /** Remove my last move, if any. */
+    void removeLast() {
+        if (_size > 0) {
+            _size -= 1;
+        }
+    }
+
+    /** Remove all my moves. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Marks the start of a record file. */
+    private static final int MAGIC = 0x5442_5231;
+    /** Bytes before the first move. */
+    private static final int HEADER_SIZE =
+        4 * Integer.BYTES + Long.BYTES;
+    /** Initial capacity of _moves. */
+    private static final int INITIAL_SIZE = 64;
+
+    /** Plies between checkpoints. */
+    private final int _interval;
+    /** Move limit, or Integer.MAX_VALUE. */
+    private int _limit;
+    /** Random seed. */
+    private long _seed;
+    /** Codes of my moves, in _moves[0 .. _size-1]. */
+    private short[] _moves;
+    /** Number of moves. */
+    private int _size;
+    /** Position keys at my checkpoints. */
+    private long[] _keys = new long[0];
+}
@@ -0,0 +1,154 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A multiset of long values (such as position keys), stored in
+ *  open-addressed primitive arrays so that adding, removing, and counting
+ *  a value allocate nothing except when the table grows.
+ *  @author Wen Zeng
+ */
+final class LongMultiset {
+
+    /** An empty multiset. */
+    LongMultiset() {
+        _keys = new long[INITIAL_SIZE];
+        _counts = new int[INITIAL_SIZE];
+    }
+
+    /** A multiset containing the same values as MODEL. */
+    LongMultiset(LongMultiset model) {
+        _keys = model._keys.clone();
+        _counts = model._counts.clone();
+        _used = model._used;
+    }
+
+    /** Make my contents the same as MODEL's, reusing my arrays if they are
+     *  the same size as MODEL's. */
+    void copy(LongMultiset model) {
+        if (_keys.length == model._keys.length) {
+            System.arraycopy(model._keys, 0, _keys, 0, _keys.length);
+            System.arraycopy(model._counts, 0, _counts, 0, _counts.length);
+        } else {
+            _keys = model._keys.clone();
+            _counts = model._counts.clone();
+        }
+        _used = model._used;
+    }
+
+    /** Return the number of times KEY occurs in me. */
+    int count(long key) {
+        int i = find(key);
+        return _counts[i];
+    }
+
+    /** Return true iff KEY occurs in me at least once. */
+    boolean contains(long key) {
+        return count(key) != 0;
+    }
+
+    /** Add one occurrence of KEY. */
+    void add(long key) {
+        int i = find(key);
+        if (_counts[i] == 0) {
+            if (2 * (_used + 1) > _keys.length) {
+                resize(2 * _keys.length);
+                i = find(key);
+            }
+            _keys[i] = key;
+            _used += 1;
+        }
+        _counts[i] += 1;
+    }
+
+    /** Remove one occurrence of KEY, if there is one.  Return true iff
+     *  KEY was present. */
+    boolean remove(long key) {
+        int i = find(key);
+        if (_counts[i] == 0) {
+            return false;
+        }
+        _counts[i] -= 1;
+        if (_counts[i] == 0) {
+            _used -= 1;
+            closeGap(i);
+        }
+        return true;
+    }
+
+    /** Remove all values. */
+    void clear() {
+        Arrays.fill(_counts, 0);
+        _used = 0;
+    }
+
+    /** Return the number of distinct values in me. */
+    int distinct() {
+        return _used;
+    }
+
+    /** Return the index of the slot holding KEY, or of the empty slot at
+     *  which KEY's probe sequence ends if it is absent. */
+    private int find(long key) {
+        int mask = _keys.length - 1;
+        int i = home(key, mask);
+        while (_counts[i] != 0 && _keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Return the first slot to probe for KEY in a table whose size
+     *  is MASK + 1. */
+    private static int home(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    /** Having emptied slot I, move later entries of its probe cluster back
+     *  so that every remaining key is still reachable from its home
+     *  slot. */
+    private void closeGap(int i) {
+        int mask = _keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (_counts[j] == 0) {
+                return;
+            }
+            int h = home(_keys[j], mask);
+            boolean movable = i <= j ? (h <= i || h > j) : (h <= i && h > j);
+            if (movable) {
+                _keys[i] = _keys[j];
+                _counts[i] = _counts[j];
+                _counts[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    /** Rehash my contents into tables of size SIZE (a power of 2). */
+    private void resize(int size) {
+        long[] keys = _keys;
+        int[] counts = _counts;
+        _keys = new long[size];
+        _counts = new int[size];
+        for (int k = 0; k < keys.length; k += 1) {
+            if (counts[k] != 0) {
+                int i = find(keys[k]);
+                _keys[i] = keys[k];
+                _counts[i] = counts[k];
+            }
+        }
+    }
+
+    /** Initial table size (a power of 2). */
+    private static final int INITIAL_SIZE = 256;
+
+    /** The distinct values present, in slots whose _counts are non-zero. */
+    private long[] _keys;
+    /** _counts[i] is the number of occurrences of _keys[i], or 0 if slot i
+     *  is empty. */
+    private int[] _counts;
+    /** Number of non-empty slots. */
+    private int _used;
+}
@@ -15,16 +15,26 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
+    /** The line printed at the start of each game. */
+    static final String BANNER = "Tablut 61B, staff version 1.0";
+
     /** The main program.  ARGS may contain the option --display. */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1}"
+                            + " --time=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --ponder --eval={0,1} --book={0,1}"
+                            + " --endgames={0,1} --record={0,1}"
+                            + " --server=(\\d+){0,1}"
+                            + " --compute=(\\d+){0,1} --={0,2}",
                             args);
         if (!options.ok()) {
-            System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
-            System.exit(1);
+            usage();
+        }
+        if (options.contains("--server")) {
+            serve(options);
+            return;
         }
 
         List<String> files = options.get("--");
@@ -49,7 +59,7 @@ public class Main {
         }
 
         Controller control = getController(options);
-        System.out.println("Tablut 61B, staff version 1.0");
+        System.out.println(BANNER);
 
         try {
             control.play();
@@ -63,6 +73,47 @@ public class Main {
 
     }
 
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java tablut.Main [--display]"
+                           + " [--log=FILE] [--eval=FILE]"
+                           + " [--book=FILE] [--endgames=FILE]"
+                           + " [--record=FILE]"
+                           + " [--time=MILLIS]"
+                           + " [--threads=N] [--ponder] [--strict]"
+                           + " [INPUT [OUTPUT]]");
+        System.err.println("       java tablut.Main --server=PORT"
+                           + " [--compute=N] [--time=MILLIS]");
+        System.exit(1);
+    }
+
+    /** Host games on the local port given by OPTIONS, with the number of
+     *  search threads and the time budget it gives.  Prints the usage
+     *  message if any of these is missing or is not a number. */
+    private static void serve(CommandArgs options) {
+        int port = 0, compute = 0;
+        long millis = 0;
+        try {
+            port = Integer.parseInt(options.getFirst("--server"));
+            compute = options.contains("--compute")
+                ? Integer.parseInt(options.getFirst("--compute"))
+                : Runtime.getRuntime().availableProcessors();
+            millis = options.contains("--time")
+                ? Long.parseLong(options.getFirst("--time")) : 0;
+        } catch (NumberFormatException excp) {
+            usage();
+        }
+        try (Server server = new Server(compute, millis)) {
+            server.listen(port);
+        } catch (IOException excp) {
+            System.err.printf("Server failed: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -96,7 +147,56 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer,
+                           new AI(), options.contains("--strict"));
+        if (options.contains("--time")) {
+            try {
+                long millis = Long.parseLong(options.getFirst("--time"));
+                control.setMoveTime(Piece.WHITE, millis);
+                control.setMoveTime(Piece.BLACK, millis);
+            } catch (NumberFormatException excp) {
+                throw error("time budget too large");
+            }
+        }
+        if (options.contains("--eval")) {
+            try {
+                control.setEvaluator(
+                    Evaluator.load(options.getFirst("--eval")));
+            } catch (IOException excp) {
+                throw error("Could not read evaluation weights");
+            }
+        }
+        if (options.contains("--book")) {
+            try {
+                control.setOpeningBook(
+                    OpeningBook.load(options.getFirst("--book")));
+            } catch (IOException excp) {
+                throw error("Could not read opening book");
+            }
+        }
+        if (options.contains("--endgames")) {
+            try {
+                control.setEndgameCache(
+                    new EndgameCache(options.getFirst("--endgames")));
+            } catch (IOException excp) {
+                throw error("Could not read endgame cache");
+            }
+        }
+        if (options.contains("--record")) {
+            control.setRecordFile(options.getFirst("--record"));
+        }
+        if (options.contains("--ponder")) {
+            control.setPondering(true);
+        }
+        if (options.contains("--threads")) {
+            try {
+                control.setSearchThreads(
+                    Integer.parseInt(options.getFirst("--threads")), true);
+            } catch (NumberFormatException excp) {
+                throw error("thread count too large");
+            }
+        }
+        return control;
     }
 }
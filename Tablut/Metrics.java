@@ -0,0 +1,60 @@
+package tablut;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A registry of named metrics: counters, which accumulate sums, and
+ *  maxima, which keep the largest value reported.  Metrics are created on
+ *  first use; thereafter, updating one through the object returned by
+ *  counter or maximum takes no locks and allocates nothing, and any
+ *  thread may read them at any time.
+ *  @author Wen Zeng
+ */
+final class Metrics {
+
+    /** Return the counter named NAME, creating it if needed. */
+    LongAdder counter(String name) {
+        return _counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /** Return the maximum named NAME, creating it (with value 0) if
+     *  needed. */
+    LongAccumulator maximum(String name) {
+        return _maxima.computeIfAbsent(name,
+                                       k -> new LongAccumulator(Math::max, 0));
+    }
+
+    /** Return the current value of the metric named NAME, or 0 if there
+     *  is none. */
+    long get(String name) {
+        LongAdder counter = _counters.get(name);
+        if (counter != null) {
+            return counter.sum();
+        }
+        LongAccumulator max = _maxima.get(name);
+        return max == null ? 0 : max.get();
+    }
+
+    /** Return the current values of all my metrics, by name. */
+    SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : _counters.entrySet()) {
+            result.put(e.getKey(), e.getValue().sum());
+        }
+        for (Map.Entry<String, LongAccumulator> e : _maxima.entrySet()) {
+            result.put(e.getKey(), e.getValue().get());
+        }
+        return result;
+    }
+
+    /** The counters, by name. */
+    private final ConcurrentHashMap<String, LongAdder> _counters =
+        new ConcurrentHashMap<>();
+    /** The maxima, by name. */
+    private final ConcurrentHashMap<String, LongAccumulator> _maxima =
+        new ConcurrentHashMap<>();
+}
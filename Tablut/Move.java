@@ -3,9 +3,9 @@ package tablut;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 import static tablut.Square.sq;
+import static tablut.Square.BOARD_SIZE;
 import static tablut.Square.NUM_SQUARES;
 import static tablut.Square.ROOK_SQUARES;
 import static tablut.Square.SQUARE_LIST;
@@ -14,7 +14,10 @@ import static tablut.Utils.*;
 /** A move in the game of Tablut. As for Squares, Moves are immutable
  *  and unique: there is only one move object for each possible move
  *  (generated by the factory method  mv, the constructor being private).
- *  As for Squares, you can freely use == to compare Moves.
+ *  As for Squares, you can freely use == to compare Moves.  All of them
+ *  are created when the class is loaded.  Within the search, moves are
+ *  passed as their indices (see index()), which fit in a short, and Move
+ *  objects are looked up only where a caller needs one.
  *  @author
  */
 final class Move {
@@ -35,40 +38,105 @@ final class Move {
         return _to;
     }
 
+    /** Return a small integer that uniquely identifies this Move:
+     *  from().index() * NUM_SQUARES + to().index(). */
+    int index() {
+        return _index;
+    }
+
+    /** Return my index() as a short, the form in which moves are kept in
+     *  files. */
+    short code() {
+        return (short) _index;
+    }
+
+    /** Return the index of the square moved from by the move whose index
+     *  is MOVE. */
+    static int fromIndex(int move) {
+        return move / NUM_SQUARES;
+    }
+
+    /** Return the index of the square moved to by the move whose index
+     *  is MOVE. */
+    static int toIndex(int move) {
+        return move % NUM_SQUARES;
+    }
+
     /** Return the unique Move FROM-TO, or null if this is not a valid
      *  move. */
     static Move mv(Square from, Square to) {
-        if ((from.row() != to.row() && from.col() != to.col()) || from == to) {
-            return null;
-        }
+        return MOVES[from.index()][to.index()];
+    }
 
-        if (MOVES[from.index()][to.index()] == null) {
-            MOVES[from.index()][to.index()] = new Move(from, to);
+    /** Return the Move whose index() is INDEX, or null if there is no
+     *  such move. */
+    static Move mv(int index) {
+        if (index < 0 || index >= NUM_SQUARES * NUM_SQUARES) {
+            return null;
         }
-        return MOVES[from.index()][to.index()];
+        return MOVES[index / NUM_SQUARES][index % NUM_SQUARES];
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax, and null otherwise. */
-    static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
-            Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
-            } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
-            }
-            return mv(from, to);
-        }
-        return null;
+    static Move mv(CharSequence str) {
+        return mv(parse(str, 0, str.length()));
     }
 
     /** Return true iff STR has the right format for a Move. */
-    static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+    static boolean isGrammaticalMove(CharSequence str) {
+        return str.length() == MOVE_LENGTH
+            && decode(str.charAt(0), str.charAt(1), str.charAt(2),
+                      str.charAt(3)) >= 0;
+    }
+
+    /** Return the index (as for index()) of the move denoted by the
+     *  characters STR[START .. END-1], or -1 if they do not denote a
+     *  valid move.  Allocates nothing. */
+    static int parse(CharSequence str, int start, int end) {
+        if (end - start != MOVE_LENGTH) {
+            return -1;
+        }
+        return valid(decode(str.charAt(start), str.charAt(start + 1),
+                            str.charAt(start + 2), str.charAt(start + 3)));
+    }
+
+    /** Return the index (as for index()) of the move denoted by the ASCII
+     *  characters BUF[START .. END-1], or -1 if they do not denote a valid
+     *  move.  Allocates nothing. */
+    static int parse(byte[] buf, int start, int end) {
+        if (end - start != MOVE_LENGTH) {
+            return -1;
+        }
+        return valid(decode(buf[start], buf[start + 1], buf[start + 2],
+                            buf[start + 3]));
+    }
+
+    /** Return NUM_SQUARES times the index of the square moved from plus
+     *  the index of the square moved to for the move whose text is COL,
+     *  ROW, DASH, DEST (the syntax of MOVE_PATTERN), or -1 if those
+     *  characters do not have that syntax. */
+    private static int decode(int col, int row, int dash, int dest) {
+        col -= 'a';
+        row -= '1';
+        if (col < 0 || col >= BOARD_SIZE || row < 0 || row >= BOARD_SIZE
+            || dash != '-') {
+            return -1;
+        }
+        int from = row * BOARD_SIZE + col;
+        if (dest >= 'a' && dest < 'a' + BOARD_SIZE) {
+            return from * NUM_SQUARES + row * BOARD_SIZE + dest - 'a';
+        } else if (dest >= '1' && dest < '1' + BOARD_SIZE) {
+            return from * NUM_SQUARES + (dest - '1') * BOARD_SIZE + col;
+        }
+        return -1;
+    }
+
+    /** Return CODE, as returned by decode, if it denotes a move (that is,
+     *  one whose squares differ), and otherwise -1. */
+    private static int valid(int code) {
+        return code < 0 || code / NUM_SQUARES == code % NUM_SQUARES
+            ? -1 : code;
     }
 
     @Override
@@ -92,10 +160,11 @@ final class Move {
     /** Construct the Move FROM-TO. */
     private Move(Square from, Square to) {
         _from = from; _to = to;
+        _index = from.index() * NUM_SQUARES + to.index();
         if (_from.col() == _to.col()) {
-            _str = String.format("%s-%c", from, (char) to.row() + '1');
+            _str = from + "-" + (char) (to.row() + '1');
         } else {
-            _str = String.format("%s-%c", from, (char) to.col() + 'a');
+            _str = from + "-" + (char) (to.col() + 'a');
         }
     }
 
@@ -106,10 +175,14 @@ final class Move {
 
     @Override
     public int hashCode() {
-        return (_from.index() << 6) + _to.index();
+        return index();
     }
 
-    /** The cache of all Moves created. */
+    /** Length of the text of a move. */
+    private static final int MOVE_LENGTH = 4;
+
+    /** All Moves: MOVES[i][j] is the move from the square with index I to
+     *  the one with index J, or null if there is none. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
     /** ROOK_MOVES[i][d] is a list of all rook moves in direction
@@ -120,11 +193,12 @@ final class Move {
 
     static {
         for (Square sq0 : SQUARE_LIST) {
-            int r0 = sq0.row(), c0 = sq0.col(), i0 = sq0.index();
+            int i0 = sq0.index();
             for (int d = 0; d < 4; d += 1) {
                 MoveList L = ROOK_MOVES[i0][d] = new MoveList();
                 for (Square sq1 : ROOK_SQUARES[i0][d]) {
-                    L.add(mv(sq0, sq1));
+                    MOVES[i0][sq1.index()] = new Move(sq0, sq1);
+                    L.add(MOVES[i0][sq1.index()]);
                 }
             }
         }
@@ -132,8 +206,8 @@ final class Move {
 
     /** The components of this Move. */
     private final Square _from, _to;
+    /** My index(). */
+    private final int _index;
     /** The printed form of this Move. */
-    private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
+    private final String _str;
 }
@@ -0,0 +1,151 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Square.NUM_SQUARES;
+
+/** Orders the moves at each node of an alpha-beta search so that the
+ *  moves most likely to cause a cutoff are tried first: the move the
+ *  transposition table remembers as best, then captures, then the
+ *  "killer" moves that recently caused cutoffs at the same ply, and then
+ *  the remaining moves by their history score (how often and how deep they
+ *  have caused cutoffs anywhere in the tree).  Also keeps count of the
+ *  moves actually searched per node, which is the effective branching
+ *  factor that ordering is meant to reduce.
+ *  @author Wen Zeng
+ */
+final class MoveOrdering {
+
+    /** Number of killer moves remembered per ply. */
+    static final int KILLERS = 2;
+
+    /** Forget all killer moves, age the history scores, and reset my
+     *  counters, in preparation for a new search. */
+    void newSearch() {
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] >>= 1;
+        }
+        _nodes = _searched = _cutoffs = _firstCutoffs = 0;
+    }
+
+    /** Sort MOVES[0 .. N-1], the Move.index() values of the legal moves at
+     *  ply PLY of the search on BOARD, into the order in which they should
+     *  be tried.  TTMOVE is the index of the best move recorded in the
+     *  transposition table, or TranspositionTable.NO_MOVE. */
+    void order(Board board, int[] moves, int n, int ply, int ttMove) {
+        ensurePly(ply, n);
+        int[] scores = _scores[ply];
+        int[] killers = _killers[ply];
+        for (int i = 0; i < n; i += 1) {
+            int index = moves[i];
+            int score;
+            if (board.isCapture(index)) {
+                score = CAPTURE_SCORE;
+            } else if (index == killers[0] || index == killers[1]) {
+                score = KILLER_SCORE;
+            } else {
+                score = _history[index];
+            }
+            if (index == ttMove) {
+                score |= TT_SCORE;
+            }
+            int j;
+            for (j = i; j > 0 && scores[j - 1] < score; j -= 1) {
+                scores[j] = scores[j - 1];
+                moves[j] = moves[j - 1];
+            }
+            scores[j] = score;
+            moves[j] = index;
+        }
+    }
+
+    /** Return true iff the Kth move in the most recent ordering at PLY
+     *  is a capture. */
+    boolean isCapture(int ply, int k) {
+        return (_scores[ply][k] & CAPTURE_SCORE) != 0;
+    }
+
+    /** Record that the Kth move, whose index is MOVE, in the ordering at
+     *  PLY caused a cutoff in a search of depth DEPTH. */
+    void cutoff(int move, int ply, int k, int depth) {
+        _cutoffs += 1;
+        if (k == 0) {
+            _firstCutoffs += 1;
+        }
+        if (isCapture(ply, k)) {
+            return;
+        }
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        _history[move] = Math.min(_history[move] + depth * depth,
+                                  MAX_HISTORY);
+    }
+
+    /** Record that a node was expanded and SEARCHED of its moves were
+     *  searched before it was finished or cut off. */
+    void searched(int searched) {
+        _nodes += 1;
+        _searched += searched;
+    }
+
+    /** Return the average number of moves searched per expanded node since
+     *  the last newSearch. */
+    double branchingFactor() {
+        return _nodes == 0 ? 0.0 : (double) _searched / _nodes;
+    }
+
+    /** Return the fraction of cutoffs since the last newSearch that were
+     *  caused by the first move tried. */
+    double firstMoveCutoffRate() {
+        return _cutoffs == 0 ? 0.0 : (double) _firstCutoffs / _cutoffs;
+    }
+
+    /** Make sure there are killer and score tables for PLY, the latter
+     *  with room for at least N moves. */
+    private void ensurePly(int ply, int n) {
+        if (ply >= _scores.length) {
+            int old = _scores.length;
+            _scores = Arrays.copyOf(_scores, ply + 1);
+            _killers = Arrays.copyOf(_killers, ply + 1);
+            for (int p = old; p <= ply; p += 1) {
+                _scores[p] = new int[INITIAL_MOVES];
+                _killers[p] = new int[KILLERS];
+            }
+        }
+        if (_scores[ply].length < n) {
+            _scores[ply] = new int[n];
+        }
+    }
+
+    /** Ordering scores.  Scores of quiet moves are their history values,
+     *  all less than KILLER_SCORE. */
+    private static final int
+        TT_SCORE = 1 << 30,
+        CAPTURE_SCORE = 1 << 29,
+        KILLER_SCORE = 1 << 28,
+        MAX_HISTORY = KILLER_SCORE - 1;
+
+    /** Initial size of the table of scores at each ply. */
+    private static final int INITIAL_MOVES = 128;
+
+    /** _history[m] measures how useful the move whose index (and
+     *  hashCode()) is M has been for causing cutoffs. */
+    private final int[] _history = new int[NUM_SQUARES * NUM_SQUARES];
+    /** _killers[p] holds the indices of the most recent quiet moves that
+     *  caused cutoffs at ply P, most recent first. */
+    private int[][] _killers = new int[0][];
+    /** _scores[p][k] is the ordering score of the Kth move in the most
+     *  recent ordering at ply P. */
+    private int[][] _scores = new int[0][];
+
+    /** Number of nodes expanded and of moves searched at them. */
+    private long _nodes, _searched;
+    /** Number of cutoffs, and of those caused by the first move. */
+    private long _cutoffs, _firstCutoffs;
+}
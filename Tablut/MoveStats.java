@@ -0,0 +1,46 @@
+package tablut;
+
+/** Running totals of the searches an automated player has made for its
+ *  moves: how many, the positions they visited, and the time they took.
+ *  @author Wen Zeng
+ */
+final class MoveStats {
+
+    /** Record a search that visited NODES positions in NANOS
+     *  nanoseconds. */
+    void add(long nodes, long nanos) {
+        _moves += 1;
+        _nodes += nodes;
+        _nanos += nanos;
+    }
+
+    /** Add the totals in OTHER to mine. */
+    void add(MoveStats other) {
+        _moves += other._moves;
+        _nodes += other._nodes;
+        _nanos += other._nanos;
+    }
+
+    /** Return the number of searches recorded. */
+    long moves() {
+        return _moves;
+    }
+
+    /** Return the total number of positions visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the average time per search, in milliseconds. */
+    double averageMillis() {
+        return _moves == 0 ? 0.0 : _nanos * 1e-6 / _moves;
+    }
+
+    /** Return the number of positions visited per second of search. */
+    double nodesPerSecond() {
+        return _nanos == 0 ? 0.0 : _nodes * 1e9 / _nanos;
+    }
+
+    /** Totals. */
+    private long _moves, _nodes, _nanos;
+}
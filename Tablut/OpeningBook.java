@@ -0,0 +1,117 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static tablut.Utils.error;
+
+/** A read-only table of recommended moves, indexed by position key (see
+ *  Board.positionKey), kept in a file that is mapped into memory rather
+ *  than read.  The file holds a magic number and the number of entries,
+ *  then the entries' keys as longs in increasing order, then their moves'
+ *  indices (see Move.index) as shorts in the same order, so a probe is a
+ *  binary search that touches only a few pages of the file.
+ *  @author Wen Zeng
+ */
+final class OpeningBook {
+
+    /** Return the book in file FILENAME. */
+    static OpeningBook load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                                                    READ)) {
+            return new OpeningBook(channel.map(READ_ONLY, 0,
+                                               channel.size()));
+        }
+    }
+
+    /** Write a book containing the moves MOVES[k] for the positions whose
+     *  keys are KEYS[k], for 0 <= k < N, to file FILENAME.  KEYS must be
+     *  distinct. */
+    static void write(String fileName, long[] keys, int[] moves, int n)
+        throws IOException {
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k += 1) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(n);
+            for (int k : order) {
+                out.writeLong(keys[k]);
+            }
+            for (int k : order) {
+                out.writeShort(moves[k]);
+            }
+        }
+    }
+
+    /** A book whose contents, in the file format, are in DATA. */
+    private OpeningBook(ByteBuffer data) {
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw error("not a book file");
+        }
+        _size = data.getInt(Integer.BYTES);
+        if (_size < 0 || data.capacity()
+            != HEADER_SIZE + (long) _size * (Long.BYTES + Short.BYTES)) {
+            throw error("corrupted book file");
+        }
+        _data = data;
+        _movesStart = HEADER_SIZE + _size * Long.BYTES;
+    }
+
+    /** Return the number of positions in me. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the key of my Kth position, in increasing order of key. */
+    long key(int k) {
+        return _data.getLong(HEADER_SIZE + k * Long.BYTES);
+    }
+
+    /** Return the index of the move for my Kth position. */
+    int move(int k) {
+        return _data.getShort(_movesStart + k * Short.BYTES);
+    }
+
+    /** Return the index of my move for the position whose key is KEY, or
+     *  TranspositionTable.NO_MOVE if I have none. */
+    int find(long key) {
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = key(mid);
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return move(mid);
+            }
+        }
+        return TranspositionTable.NO_MOVE;
+    }
+
+    /** Marks the start of a book file. */
+    private static final int MAGIC = 0x5442_4B31;
+    /** Bytes before the first key. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /** The mapped contents of my file. */
+    private final ByteBuffer _data;
+    /** Number of positions. */
+    private final int _size;
+    /** Offset of the first move index in _data. */
+    private final int _movesStart;
+}
@@ -0,0 +1,84 @@
+package tablut;
+
+import java.util.List;
+
+/** A "perft" benchmark for Tablut move generation: counts the positions
+ *  reachable from the initial position in a given number of moves (not
+ *  expanding positions in which the game has ended), once using the
+ *  List-returning legalMoves and once using the per-ply move buffers that
+ *  the AI searches with, and reports the node throughput of each.  Usage:
+ *      java tablut.Perft [DEPTH [REPETITIONS]]
+ *  @author Wen Zeng
+ */
+public class Perft {
+
+    /** Default depth and number of timed repetitions. */
+    private static final int DEFAULT_DEPTH = 3, DEFAULT_REPS = 3;
+
+    /** Run the benchmark with the depth and repetition count in ARGS. */
+    public static void main(String... args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0])
+            : DEFAULT_DEPTH;
+        int reps = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_REPS;
+        Perft perft = new Perft(depth);
+        for (int r = 0; r < reps; r += 1) {
+            perft.report("list", depth, true);
+            perft.report("buffer", depth, false);
+        }
+    }
+
+    /** A Perft driver with move buffers for searches up to MAXDEPTH. */
+    Perft(int maxDepth) {
+        _buffers = new int[maxDepth + 1][Board.MAX_MOVES];
+    }
+
+    /** Time a count to DEPTH from the initial position, using List move
+     *  generation iff USELISTS, and print the result labeled LABEL. */
+    private void report(String label, int depth, boolean useLists) {
+        Board board = new Board();
+        long start = System.nanoTime();
+        long nodes = useLists ? countWithLists(board, depth)
+            : count(board, depth);
+        double secs = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("%-6s depth %d: %d nodes in %.3f s"
+                          + " (%.0f nodes/s)%n",
+                          label, depth, nodes, secs, nodes / secs);
+    }
+
+    /** Return the number of leaf positions DEPTH moves from BOARD, using
+     *  the move buffers. */
+    long count(Board board, int depth) {
+        if (depth == 0 || board.winner() != null) {
+            return 1;
+        }
+        int[] moves = _buffers[depth];
+        int n = board.legalMoves(board.turn(), moves);
+        long total = 0;
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            total += count(board, depth - 1);
+            board.undo();
+        }
+        return total;
+    }
+
+    /** Return the number of leaf positions DEPTH moves from BOARD, using
+     *  List move generation. */
+    long countWithLists(Board board, int depth) {
+        if (depth == 0 || board.winner() != null) {
+            return 1;
+        }
+        List<Move> moves = board.legalMoves(board.turn());
+        long total = 0;
+        for (Move move : moves) {
+            board.makeMove(move);
+            total += countWithLists(board, depth - 1);
+            board.undo();
+        }
+        return total;
+    }
+
+    /** _buffers[d] holds the moves generated with D moves left to go. */
+    private final int[][] _buffers;
+}
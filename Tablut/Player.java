@@ -39,6 +39,18 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Called by my controller after MOVE has been made on its board by
+     *  either side, or with MOVE null after any other change to the
+     *  position (such as an undo or a new game).  Does nothing by
+     *  default. */
+    void moveMade(Move move) {
+    }
+
+    /** Called by my controller when I will no longer be asked for moves.
+     *  Does nothing by default. */
+    void stop() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
@@ -0,0 +1,188 @@
+package tablut;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Statistics of one search by an AI: positions visited and evaluated,
+ *  cutoffs by the position of the cutting move in the search order,
+ *  transposition-table use, the depth completed and the deepest ply
+ *  reached, and the time taken.  Counting is done in plain fields by the
+ *  single thread that owns the object, so it costs an increment and
+ *  allocates nothing.  A SearchStats bound to a Metrics registry adds
+ *  each finished search to counters there (see publish).
+ *  @author Wen Zeng
+ */
+final class SearchStats {
+
+    /** Cutoffs by the Kth move in search order are counted separately for
+     *  K < CUTOFF_SLOTS - 1, and together for all later moves. */
+    static final int CUTOFF_SLOTS = 8;
+
+    /** Statistics that are not published. */
+    SearchStats() {
+        this(null, null);
+    }
+
+    /** Statistics that are published to METRICS under names beginning
+     *  with PREFIX and a period, if METRICS is not null. */
+    SearchStats(Metrics metrics, String prefix) {
+        if (metrics == null) {
+            _published = null;
+            _deepest = null;
+            return;
+        }
+        _published = new LongAdder[COUNTER_NAMES.length + CUTOFF_SLOTS];
+        for (int k = 0; k < COUNTER_NAMES.length; k += 1) {
+            _published[k] = metrics.counter(prefix + "." + COUNTER_NAMES[k]);
+        }
+        for (int k = 0; k < CUTOFF_SLOTS; k += 1) {
+            _published[COUNTER_NAMES.length + k] =
+                metrics.counter(prefix + ".cutoffs." + (k + 1));
+        }
+        _deepest = metrics.maximum(prefix + ".maxPly");
+    }
+
+    /** Clear my counts for a new search. */
+    void reset() {
+        _nodes = _leaves = _probes = _hits = _nanos = 0;
+        _depth = _maxPly = 0;
+        Arrays.fill(_cutoffs, 0);
+    }
+
+    /** Record a static evaluation at ply PLY from the root. */
+    void leaf(int ply) {
+        _leaves += 1;
+        if (ply > _maxPly) {
+            _maxPly = ply;
+        }
+    }
+
+    /** Record a cutoff caused by the Kth move (from 0) tried at a node. */
+    void cutoff(int k) {
+        _cutoffs[Math.min(k, CUTOFF_SLOTS - 1)] += 1;
+    }
+
+    /** Add the leaf and cutoff counts of OTHER, part of the same search,
+     *  to mine. */
+    void add(SearchStats other) {
+        _leaves += other._leaves;
+        _maxPly = Math.max(_maxPly, other._maxPly);
+        for (int k = 0; k < CUTOFF_SLOTS; k += 1) {
+            _cutoffs[k] += other._cutoffs[k];
+        }
+    }
+
+    /** Record that the search is finished, having visited NODES positions
+     *  and completed DEPTH in NANOS nanoseconds, and made PROBES probes of
+     *  the transposition table, of which HITS found entries. */
+    void finish(long nodes, int depth, long nanos, long probes, long hits) {
+        _nodes = nodes;
+        _depth = depth;
+        _nanos = nanos;
+        _probes = probes;
+        _hits = hits;
+    }
+
+    /** Add my counts to the metrics I am bound to, if any. */
+    void publish() {
+        if (_published == null) {
+            return;
+        }
+        _published[SEARCHES].increment();
+        _published[NODES].add(_nodes);
+        _published[LEAVES].add(_leaves);
+        _published[NANOS].add(_nanos);
+        _published[PROBES].add(_probes);
+        _published[HITS].add(_hits);
+        for (int k = 0; k < CUTOFF_SLOTS; k += 1) {
+            _published[COUNTER_NAMES.length + k].add(_cutoffs[k]);
+        }
+        _deepest.accumulate(_maxPly);
+    }
+
+    /** Return the number of positions visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of static evaluations. */
+    long leaves() {
+        return _leaves;
+    }
+
+    /** Return the number of transposition-table probes. */
+    long probes() {
+        return _probes;
+    }
+
+    /** Return the number of probes that found entries. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of cutoffs caused by the Kth move tried (or, for
+     *  K == CUTOFF_SLOTS - 1, by any later move). */
+    long cutoffs(int k) {
+        return _cutoffs[k];
+    }
+
+    /** Return the deepest ply from the root that was evaluated. */
+    int maxPly() {
+        return _maxPly;
+    }
+
+    /** Return the depth completed. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the fraction of table probes that found entries. */
+    double hitRate() {
+        return _probes == 0 ? 0.0 : (double) _hits / _probes;
+    }
+
+    /** Return the number of positions visited per second. */
+    double nodesPerSecond() {
+        return _nanos == 0 ? 0.0 : _nodes * 1e9 / _nanos;
+    }
+
+    @Override
+    public String toString() {
+        long cutoffs = 0;
+        for (long c : _cutoffs) {
+            cutoffs += c;
+        }
+        StringBuilder byMove = new StringBuilder();
+        for (int k = 0; k < CUTOFF_SLOTS; k += 1) {
+            byMove.append(String.format(" %.1f%%", cutoffs == 0 ? 0.0
+                                        : 100.0 * _cutoffs[k] / cutoffs));
+        }
+        return String.format("depth %d (max ply %d), %d nodes, %d leaves"
+                             + " in %d ms (%.0f nodes/s); table %.1f%% hits;"
+                             + " cutoffs by move 1-%d+:%s",
+                             _depth, _maxPly, _nodes, _leaves,
+                             _nanos / 1000000, nodesPerSecond(),
+                             100.0 * hitRate(), CUTOFF_SLOTS, byMove);
+    }
+
+    /** Names of the published counters other than cutoffs. */
+    private static final String[] COUNTER_NAMES = {
+        "searches", "nodes", "leaves", "nanos", "probes", "hits"
+    };
+    /** Indices of the counters in COUNTER_NAMES and _published. */
+    private static final int
+        SEARCHES = 0, NODES = 1, LEAVES = 2, NANOS = 3, PROBES = 4, HITS = 5;
+
+    /** Counts for the current search. */
+    private long _nodes, _leaves, _probes, _hits, _nanos;
+    /** Depth completed and deepest ply evaluated. */
+    private int _depth, _maxPly;
+    /** Cutoffs by move number. */
+    private final long[] _cutoffs = new long[CUTOFF_SLOTS];
+    /** The counters I publish to, in the order of COUNTER_NAMES followed
+     *  by the cutoff counters, or null if I do not publish. */
+    private final LongAdder[] _published;
+    /** The maximum to which I publish _maxPly, or null. */
+    private final LongAccumulator _deepest;
+}
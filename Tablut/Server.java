@@ -0,0 +1,156 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static tablut.Piece.*;
+
+/** Hosts many games of Tablut at once.  Each game is a session with its
+ *  own Controller, Board, Reporter, and players, reading the usual text
+ *  commands from one stream and writing prompts, moves, and notes to
+ *  another: either a connection to a socket on the local host, or a
+ *  pair of streams supplied by the caller.  Each session runs on its own
+ *  virtual thread, so that the thousands of them that are waiting for
+ *  input cost little.  (Virtual threads need Java 21; on earlier
+ *  versions each session gets an ordinary thread from a cached pool
+ *  instead.)  Automated players do their searching on a shared pool with
+ *  a fixed number of platform threads, so that searches do not tie up
+ *  the few threads that carry the virtual threads, and cannot delay the
+ *  input and output of other sessions.
+ *  @author Wen Zeng
+ */
+final class Server implements AutoCloseable {
+
+    /** Log2 of the size of each automated player's transposition table.
+     *  This is much smaller than usual, since there may be thousands. */
+    static final int SESSION_TABLE_LOG_SIZE = 14;
+
+    /** Bytes taken by the transposition table of each automated player
+     *  in a session (256KB), which it allocates at its first search.  A
+     *  session against one automated player (the default) thus takes a
+     *  quarter of a megabyte in tables, one between two automated players
+     *  half a megabyte, and a thousand sessions a quarter to half a
+     *  gigabyte. */
+    static final long SESSION_TABLE_BYTES =
+        TranspositionTable.bytes(SESSION_TABLE_LOG_SIZE);
+
+    /** Number of threads each automated player searches with.  Sessions
+     *  may not change it, nor turn on pondering, since either would let
+     *  one client run searches outside the shared compute pool. */
+    static final int SESSION_SEARCH_THREADS = 1;
+
+    /** A server whose automated players search on COMPUTETHREADS shared
+     *  threads for MOVETIME milliseconds per move (0 for a fixed depth). */
+    Server(int computeThreads, long moveTime) {
+        if (computeThreads < 1) {
+            throw Utils.error("need at least one compute thread");
+        }
+        _compute = Executors.newFixedThreadPool(computeThreads, body -> {
+            Thread thread = new Thread(body, "search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _moveTime = moveTime;
+    }
+
+    /** Accept connections to PORT on the local host, playing a session on
+     *  each, until the socket is closed or an error occurs. */
+    void listen(int port) throws IOException {
+        try (ServerSocket server =
+             new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                Socket client = server.accept();
+                _sessions.execute(() -> serve(client));
+            }
+        }
+    }
+
+    /** Play a session over CLIENT and then close it.  Since no one waits
+     *  for the session, an error that ends it is reported on the standard
+     *  error, rather than being lost with the session's thread. */
+    private void serve(Socket client) {
+        try (client) {
+            play(client.getInputStream(), client.getOutputStream());
+        } catch (IOException | RuntimeException excp) {
+            System.err.printf("Session with %s failed: %s%n",
+                              client.getRemoteSocketAddress(), excp);
+        }
+    }
+
+    /** Start a session that reads commands from INPUT and writes to
+     *  OUTPUT, closing both when it is over, and return a Future that
+     *  completes at that point. */
+    Future<?> start(InputStream input, OutputStream output) {
+        return _sessions.submit(() -> {
+            try (input; output) {
+                play(input, output);
+            }
+            return null;
+        });
+    }
+
+    /** Play one session, reading commands from INPUT and writing to
+     *  OUTPUT. */
+    private void play(InputStream input, OutputStream output) {
+        PrintStream out = new PrintStream(output, true);
+        Controller control =
+            new Controller(new NullView(), null,
+                           new TextReporter(out, out), new TextPlayer(),
+                           new AI(), false, input, out);
+        control.setComputePool(_compute);
+        control.restrictSearch(SESSION_SEARCH_THREADS, false);
+        control.setTableLogSize(SESSION_TABLE_LOG_SIZE);
+        control.setMoveTime(WHITE, _moveTime);
+        control.setMoveTime(BLACK, _moveTime);
+        out.println(Main.BANNER);
+        try {
+            control.play();
+        } catch (IllegalStateException excp) {
+            out.printf("Internal error: %s%n", excp.getMessage());
+        }
+        out.flush();
+    }
+
+    /** Stop accepting sessions, and stop the search threads once the
+     *  sessions in progress have finished. */
+    @Override
+    public void close() {
+        _sessions.shutdown();
+        try {
+            _sessions.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            _compute.shutdown();
+        }
+    }
+
+    /** Return an executor that runs each task on a new virtual thread,
+     *  if this Java has them (it is looked up by name, so that this class
+     *  still compiles on Java 17), and otherwise on a thread from a cached
+     *  pool. */
+    private static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Runs each session on its own thread. */
+    private final ExecutorService _sessions = sessionExecutor();
+    /** Runs automated players' searches. */
+    private final ExecutorService _compute;
+    /** Per-move time budget for automated players. */
+    private final long _moveTime;
+}
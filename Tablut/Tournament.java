@@ -0,0 +1,290 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+
+/** Plays a series of games between automated players without a display,
+ *  several at a time, and reports the results: wins for each side, and
+ *  each side's average time and search speed per move.  Each game has its
+ *  own Controller, seeded with the tournament's seed plus the game's
+ *  number.  Its first few plies are random moves chosen with that seed,
+ *  so that the games differ; then both sides are played by AIs, each with
+ *  its own time budget and evaluation weights.  Usage:
+ *      java tablut.Tournament [--games=N] [--threads=N] [--seed=N]
+ *          [--opening=PLIES] [--limit=N] [--white-time=MILLIS]
+ *          [--black-time=MILLIS] [--white-eval=FILE] [--black-eval=FILE]
+ *  @author Wen Zeng
+ */
+public class Tournament {
+
+    /** Defaults for the number of games, the number of random opening
+     *  plies, and the per-move time budget in milliseconds. */
+    private static final int
+        DEFAULT_GAMES = 10, DEFAULT_OPENING = 2, DEFAULT_TIME = 100;
+
+    /** Run the tournament described by ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --seed=(\\d+){0,1} --opening=(\\d+){0,1}"
+                            + " --limit=(\\d+){0,1}"
+                            + " --white-time=(\\d+){0,1}"
+                            + " --black-time=(\\d+){0,1}"
+                            + " --white-eval={0,1} --black-eval={0,1}",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.Tournament [--games=N]"
+                               + " [--threads=N] [--seed=N]"
+                               + " [--opening=PLIES] [--limit=N]"
+                               + " [--white-time=MILLIS]"
+                               + " [--black-time=MILLIS]"
+                               + " [--white-eval=FILE] [--black-eval=FILE]");
+            System.exit(1);
+        }
+        try {
+            Tournament tournament =
+                new Tournament(intOption(options, "--opening",
+                                         DEFAULT_OPENING),
+                               intOption(options, "--limit", 0),
+                               intOption(options, "--seed", 0));
+            tournament.setSide(WHITE,
+                               intOption(options, "--white-time",
+                                         DEFAULT_TIME),
+                               evalOption(options, "--white-eval"));
+            tournament.setSide(BLACK,
+                               intOption(options, "--black-time",
+                                         DEFAULT_TIME),
+                               evalOption(options, "--black-eval"));
+            tournament.run(intOption(options, "--games", DEFAULT_GAMES),
+                           intOption(options, "--threads",
+                                     Runtime.getRuntime()
+                                     .availableProcessors()));
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the value of integer option NAME in OPTIONS, or DEFAULT if
+     *  it is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int dflt) {
+        if (!options.contains(name)) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(options.getFirst(name));
+        } catch (NumberFormatException excp) {
+            throw Utils.error("bad value for %s", name);
+        }
+    }
+
+    /** Return the evaluator whose weights are in the file named by option
+     *  NAME in OPTIONS, or the default evaluator if it is absent. */
+    private static Evaluator evalOption(CommandArgs options, String name) {
+        if (!options.contains(name)) {
+            return new Evaluator();
+        }
+        try {
+            return Evaluator.load(options.getFirst(name));
+        } catch (IOException excp) {
+            throw Utils.error("could not read %s", options.getFirst(name));
+        }
+    }
+
+    /** A tournament whose games start with OPENING random plies and have
+     *  a move limit of LIMIT (none if 0), and whose Nth game is seeded
+     *  with SEED + N. */
+    Tournament(int opening, int limit, long seed) {
+        _opening = opening;
+        _limit = limit;
+        _seed = seed;
+        setSide(WHITE, DEFAULT_TIME, new Evaluator());
+        setSide(BLACK, DEFAULT_TIME, new Evaluator());
+    }
+
+    /** Have automated players on SIDE search for MILLIS milliseconds per
+     *  move and evaluate positions with EVALUATOR. */
+    void setSide(Piece side, long millis, Evaluator evaluator) {
+        _moveTime[side.ordinal()] = millis;
+        _evaluators[side.ordinal()] = evaluator;
+    }
+
+    /** Play GAMES games, THREADS at a time, printing the result of each
+     *  as it finishes and a summary at the end. */
+    void run(int games, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Game>> results = new ArrayList<>();
+        for (int g = 0; g < games; g += 1) {
+            int number = g;
+            results.add(pool.submit(() -> play(number)));
+        }
+        int[] wins = new int[PIECES.length];
+        MoveStats white = new MoveStats(), black = new MoveStats();
+        try {
+            for (Future<Game> result : results) {
+                Game game = result.get();
+                wins[game._winner == null ? 0 : game._winner.ordinal()] += 1;
+                white.add(game._white);
+                black.add(game._black);
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("game failed", excp);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.printf("%d games: white won %d, black won %d,"
+                          + " %d unfinished%n", games,
+                          wins[WHITE.ordinal()], wins[BLACK.ordinal()],
+                          wins[EMPTY.ordinal()]);
+        report("White", white);
+        report("Black", black);
+    }
+
+    /** Print the totals STATS for the side named NAME. */
+    private static void report(String name, MoveStats stats) {
+        System.out.printf("%s: %d moves searched, %.1f ms/move,"
+                          + " %.0f nodes/s%n", name, stats.moves(),
+                          stats.averageMillis(), stats.nodesPerSecond());
+    }
+
+    /** Play game number NUMBER and return its result. */
+    private Game play(int number) {
+        Controller control =
+            new Controller(new NullView(), null, new QuietReporter(number),
+                           new Opener(null, null, _opening, _limit),
+                           new AI(), false);
+        control.setSeed(_seed + number);
+        for (Piece side : new Piece[] { WHITE, BLACK }) {
+            control.setMoveTime(side, _moveTime[side.ordinal()]);
+            control.setEvaluator(side, _evaluators[side.ordinal()]);
+            control.setManual(side, true);
+        }
+        control.play();
+        Game game = new Game(control.board().winner(),
+                             control.moveStats(WHITE),
+                             control.moveStats(BLACK));
+        synchronized (System.out) {
+            System.out.printf("game %d: %s after %d moves%n", number,
+                              game._winner == null ? "unfinished"
+                              : game._winner.toName() + " wins",
+                              control.board().moveCount());
+        }
+        return game;
+    }
+
+    /** The outcome of one game. */
+    private static class Game {
+        /** A game won by WINNER (null if unfinished), in which white's and
+         *  black's searches had the totals WHITE and BLACK. */
+        Game(Piece winner, MoveStats white, MoveStats black) {
+            _winner = winner;
+            _white = white;
+            _black = black;
+        }
+
+        /** The winner, or null. */
+        private final Piece _winner;
+        /** Search totals for each side. */
+        private final MoveStats _white, _black;
+    }
+
+    /** A manual player that opens the game with random moves and then
+     *  hands its side over to an automated player.  When the game is
+     *  over, it quits. */
+    private static class Opener extends Player {
+
+        /** An Opener playing PIECE under CONTROLLER that makes random moves
+         *  for the first PLIES plies, having first set the move limit to
+         *  LIMIT (if non-zero). */
+        Opener(Piece piece, Controller controller, int plies, int limit) {
+            super(piece, controller);
+            _plies = plies;
+            _limit = limit;
+        }
+
+        @Override
+        Player create(Piece piece, Controller controller) {
+            return new Opener(piece, controller, _plies, _limit);
+        }
+
+        @Override
+        boolean isManual() {
+            return true;
+        }
+
+        @Override
+        String myMove() {
+            Board board = board();
+            if (board.winner() != null || myPiece() == EMPTY) {
+                return null;
+            } else if (_limit > 0 && board.moveCount() == 0 && !_limitSet) {
+                _limitSet = true;
+                return "limit " + _limit;
+            } else if (board.moveCount() < _plies) {
+                List<Move> moves = board.legalMoves(myPiece());
+                return moves.get(_controller.randInt(moves.size()))
+                    .toString();
+            } else {
+                return "auto " + myPiece().toName().toLowerCase();
+            }
+        }
+
+        /** Number of random plies. */
+        private final int _plies;
+        /** Move limit to set, or 0. */
+        private final int _limit;
+        /** True once I have set the move limit. */
+        private boolean _limitSet;
+    }
+
+    /** A Reporter that ignores moves and notes, and prints errors on the
+     *  standard error labeled with the number of its game. */
+    private static class QuietReporter implements Reporter {
+
+        /** A reporter for game number NUMBER. */
+        QuietReporter(int number) {
+            _number = number;
+        }
+
+        @Override
+        public void reportError(String fmt, Object... args) {
+            System.err.printf("game %d: %s%n", _number,
+                              String.format(fmt, args));
+        }
+
+        @Override
+        public void reportNote(String fmt, Object... args) {
+        }
+
+        @Override
+        public void reportMove(Move move) {
+        }
+
+        /** My game's number. */
+        private final int _number;
+    }
+
+    /** All kinds of Piece. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** Number of random plies at the start of each game. */
+    private final int _opening;
+    /** Move limit for each game, or 0. */
+    private final int _limit;
+    /** Seed for game 0. */
+    private final long _seed;
+    /** Per-move time budgets, indexed by side's ordinal. */
+    private final long[] _moveTime = new long[PIECES.length];
+    /** Evaluators, indexed by side's ordinal. */
+    private final Evaluator[] _evaluators = new Evaluator[PIECES.length];
+}
@@ -0,0 +1,182 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A fixed-size cache of search results, indexed by position key.  Each
+ *  entry records the depth to which its position was searched, the
+ *  resulting score and whether it is exact or only a bound, and the index
+ *  of the best move found.  Entries live in two parallel arrays of longs
+ *  (keys and packed data), so probing and storing allocate nothing.  When
+ *  two positions compete for a slot, the one searched more deeply (or
+ *  during the current search) is kept.
+ *
+ *  A table may be shared by several search threads without locking.  Each
+ *  slot stores its key XORed with its data, and probe returns the data
+ *  word only if the two still match, so an entry torn by concurrent
+ *  stores reads as a miss.  The usage counters are then approximate.
+ *  @author Wen Zeng
+ */
+final class TranspositionTable {
+
+    /** Bound types: the stored score is the exact value, a lower bound
+     *  on the value (the search failed high), or an upper bound (it
+     *  failed low). */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Move index stored when no best move is known. */
+    static final int NO_MOVE = 0;
+
+    /** A table with 2**LOGSIZE entries. */
+    TranspositionTable(int logSize) {
+        if (logSize < 1 || logSize > MAX_LOG_SIZE) {
+            throw new IllegalArgumentException("bad table size");
+        }
+        _keys = new long[1 << logSize];
+        _data = new long[1 << logSize];
+        _mask = (1 << logSize) - 1;
+    }
+
+    /** Return the number of entries in me. */
+    int size() {
+        return _keys.length;
+    }
+
+    /** Return the number of bytes taken by the entries of a table with
+     *  2**LOGSIZE entries. */
+    static long bytes(int logSize) {
+        return (2L * Long.BYTES) << logSize;
+    }
+
+    /** Return the number of bytes taken by my entries. */
+    long bytes() {
+        return 2L * Long.BYTES * _keys.length;
+    }
+
+    /** Remove all entries and reset my counters. */
+    void clear() {
+        Arrays.fill(_data, 0);
+        _age = 0;
+        _probes = _hits = _stores = 0;
+    }
+
+    /** Indicate that a new search is starting, so that entries stored
+     *  from now on take precedence over older ones. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+        if (_age == 0) {
+            _age = 1;
+        }
+    }
+
+    /** Return the entry for the position whose key is KEY, or 0 if there
+     *  is none.  The entry's contents are given by the static methods
+     *  depth, bound, score, and move. */
+    long probe(long key) {
+        _probes += 1;
+        int i = (int) key & _mask;
+        long data = _data[i];
+        if (data != 0 && (_keys[i] ^ data) == key) {
+            _hits += 1;
+            return data;
+        }
+        return 0;
+    }
+
+    /** Return the search depth recorded in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) recorded in
+     *  ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the score recorded in ENTRY. */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the index (as for Move.index()) of the best move recorded
+     *  in ENTRY, or NO_MOVE if there is none (or ENTRY is 0). */
+    static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & MOVE_MASK;
+    }
+
+    /** Record that the position with key KEY, searched to DEPTH, has
+     *  score SCORE with bound type BOUND, and that its best move has index
+     *  MOVE (or is NO_MOVE).  Keeps the current occupant of the slot
+     *  instead if it belongs to another position, comes from the current
+     *  search, and was searched more deeply. */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = (int) key & _mask;
+        long old = _data[i];
+        if (old != 0 && (_keys[i] ^ old) != key
+            && ((old >>> AGE_SHIFT) & AGE_MASK) == _age
+            && ((old >>> DEPTH_SHIFT) & DEPTH_MASK) > depth) {
+            return;
+        }
+        long data = (score & 0xffffffffL)
+            | (long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) move << MOVE_SHIFT
+            | (long) _age << AGE_SHIFT
+            | OCCUPIED;
+        _stores += 1;
+        _keys[i] = key ^ data;
+        _data[i] = data;
+    }
+
+    /** Overwrite the data word of the slot with index I with DATA, leaving
+     *  its key word as it is, as a store racing with another thread's
+     *  store to the same slot may.  For testing. */
+    void overwriteData(int i, long data) {
+        _data[i] = data;
+    }
+
+    /** Return the number of calls to probe since the last clear. */
+    long probes() {
+        return _probes;
+    }
+
+    /** Return the number of probes that found an entry. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of entries written. */
+    long stores() {
+        return _stores;
+    }
+
+    /** Return the fraction of probes that found an entry. */
+    double hitRate() {
+        return _probes == 0 ? 0.0 : (double) _hits / _probes;
+    }
+
+    /** Largest allowed log2 of the table size. */
+    private static final int MAX_LOG_SIZE = 28;
+
+    /** Layout of a data word: the score in the low 32 bits, then the
+     *  depth, bound type, best move index, and age, and finally a bit
+     *  that makes every occupied entry non-zero. */
+    private static final int
+        DEPTH_SHIFT = 32, DEPTH_MASK = (1 << 8) - 1,
+        BOUND_SHIFT = 40, BOUND_MASK = 3,
+        MOVE_SHIFT = 42, MOVE_MASK = (1 << 13) - 1,
+        AGE_SHIFT = 55, AGE_MASK = (1 << 7) - 1;
+    /** Flag set in the data word of every occupied entry. */
+    private static final long OCCUPIED = 1L << 62;
+
+    /** Position keys of the entries, each XORed with its data word. */
+    private final long[] _keys;
+    /** Packed contents of the entries (0 for an empty slot). */
+    private final long[] _data;
+    /** Mask selecting a slot index from a key. */
+    private final int _mask;
+    /** Age of entries stored by the current search. */
+    private int _age = 1;
+    /** Usage counters. */
+    private long _probes, _hits, _stores;
+}
@@ -1,5 +1,19 @@
 package tablut;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
@@ -21,6 +35,932 @@ public class UnitTest {
         assertTrue("There are no unit tests!", false);
     }
 
-}
+    /** Check that pieces put on the board are read back, including on
+     *  squares stored in the second word of the board's bit sets. */
+    @Test
+    public void testPutGet() {
+        Board b = new Board();
+        assertEquals(Piece.KING, b.get(Board.THRONE));
+        assertEquals(Board.THRONE, b.kingPosition());
+        b.put(Piece.EMPTY, Board.THRONE);
+        assertEquals(Piece.EMPTY, b.get(Board.THRONE));
+        assertNull(b.kingPosition());
+        b.put(Piece.KING, Square.sq("i9"));
+        assertEquals(Square.sq("i9"), b.kingPosition());
+        b.put(Piece.BLACK, Square.sq("i9"));
+        assertEquals(Piece.BLACK, b.get(Square.sq("i9")));
+        assertNull(b.kingPosition());
+    }
+
+    /** Check that undoing a sequence of random moves (with captures)
+     *  restores each earlier position and its win status. */
+    @Test
+    public void testUndo() {
+        Random rand = new Random(61);
+        for (int game = 0; game < 20; game += 1) {
+            Board b = new Board();
+            List<String> positions = new ArrayList<>();
+            List<Long> keys = new ArrayList<>();
+            List<Piece> winners = new ArrayList<>();
+            while (b.winner() == null && b.moveCount() < 200) {
+                positions.add(b.encodedBoard());
+                keys.add(b.positionKey());
+                winners.add(b.winner());
+                List<Move> moves = b.legalMoves(b.turn());
+                b.makeMove(moves.get(rand.nextInt(moves.size())));
+            }
+            for (int k = positions.size() - 1; k >= 0; k -= 1) {
+                b.undo();
+                assertEquals(positions.get(k), b.encodedBoard());
+                assertEquals((long) keys.get(k), b.positionKey());
+                assertEquals(winners.get(k), b.winner());
+                assertEquals(k, b.moveCount());
+            }
+        }
+    }
+
+    /** Check that the incrementally maintained position key depends only
+     *  on the position, not on how it was reached. */
+    @Test
+    public void testPositionKey() {
+        Random rand = new Random(62);
+        Board b = new Board();
+        for (int k = 0; k < 40 && b.winner() == null; k += 1) {
+            List<Move> moves = b.legalMoves(b.turn());
+            b.makeMove(moves.get(rand.nextInt(moves.size())));
+        }
+        Board c = new Board();
+        if (b.turn() != c.turn()) {
+            c.makeMove(c.legalMoves(c.turn()).get(0));
+        }
+        assertNotEquals(b.positionKey(), c.positionKey());
+        for (Square sq : Square.SQUARE_LIST) {
+            c.put(b.get(sq), sq);
+        }
+        assertEquals(b.encodedBoard(), c.encodedBoard());
+        assertEquals(b.positionKey(), c.positionKey());
+    }
+
+    /** Check that filling a move buffer produces the same moves, in the
+     *  same order, as legalMoves. */
+    @Test
+    public void testMoveBuffer() {
+        Random rand = new Random(63);
+        int[] buffer = new int[Board.MAX_MOVES];
+        Board b = new Board();
+        while (b.winner() == null && b.moveCount() < 100) {
+            for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+                List<Move> moves = b.legalMoves(side);
+                assertEquals(moves.size(), b.legalMoves(side, buffer));
+                for (int k = 0; k < moves.size(); k += 1) {
+                    assertEquals(moves.get(k).index(), buffer[k]);
+                }
+            }
+            List<Move> moves = b.legalMoves(b.turn());
+            b.makeMove(moves.get(rand.nextInt(moves.size())));
+        }
+    }
 
+    /** Check isUnblockedMove against a square-by-square walk of each ray
+     *  in a series of random positions. */
+    @Test
+    public void testUnblockedMove() {
+        Random rand = new Random(64);
+        Board b = new Board();
+        while (b.winner() == null && b.moveCount() < 100) {
+            for (Square from : Square.SQUARE_LIST) {
+                for (int d = 0; d < 4; d += 1) {
+                    boolean open = true;
+                    for (int k = 1; from.rookMove(d, k) != null; k += 1) {
+                        Square to = from.rookMove(d, k);
+                        open = open && b.get(to) == Piece.EMPTY;
+                        assertEquals(open, b.isUnblockedMove(from, to));
+                    }
+                }
+            }
+            List<Move> moves = b.legalMoves(b.turn());
+            b.makeMove(moves.get(rand.nextInt(moves.size())));
+        }
+    }
+
+    /** Return an automated player for SIDE under a new controller with
+     *  default settings, whose reports are discarded. */
+    private static AI newAI(Piece side) {
+        PrintStream sink = new PrintStream(new ByteArrayOutputStream());
+        Controller control =
+            new Controller(new NullView(), null,
+                           new TextReporter(sink, sink), new TextPlayer(),
+                           new AI(), false);
+        return new AI(side, control);
+    }
+
+    /** Check that single-threaded fixed-depth searches of the same
+     *  position find the same move and value every time. */
+    @Test
+    public void testDeterministicSearch() {
+        for (Board position : Benchmark.positions()) {
+            AI first = newAI(position.turn()),
+                second = newAI(position.turn());
+            int value = first.searchToDepth(position, 3);
+            assertEquals(value, second.searchToDepth(position, 3));
+            assertSame(first.lastFoundMove(), second.lastFoundMove());
+            assertEquals(value, first.searchToDepth(position, 3));
+            assertNotNull(first.lastFoundMove());
+        }
+    }
+
+    /** Check that a search with a short time budget returns a legal move
+     *  within a bounded time, and that the move is the one found by the
+     *  deepest iteration that finished, as if the search had stopped
+     *  there: an iteration cut off by the budget must be discarded. */
+    @Test
+    public void testBudgetedSearch() {
+        final long budget = 20, slack = 150;
+        for (Board position : Benchmark.positions()) {
+            PrintStream sink = new PrintStream(new ByteArrayOutputStream());
+            Controller control =
+                new Controller(new NullView(), null,
+                               new TextReporter(sink, sink),
+                               new TextPlayer(), new AI(), false);
+            control.setMoveTime(position.turn(), budget);
+            AI timed = new AI(position.turn(), control);
+            long start = System.nanoTime();
+            Move move = timed.findMove(position);
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            assertTrue(elapsed + " ms", elapsed <= budget + slack);
+            assertTrue(position.isLegal(move));
+            int depth = timed.stats().depth();
+            assertTrue(depth >= 1);
+            AI fixed = newAI(position.turn());
+            fixed.searchToDepth(position, depth);
+            assertSame(fixed.lastFoundMove(), move);
+        }
+    }
+
+    /** Check that fixed-depth searches with aspiration windows and
+     *  null-window scouts find the same moves and values as plain
+     *  full-window alpha-beta search, on the canonical positions and on
+     *  two forced wins for white: with black to move, where the king has
+     *  too many open lanes to block, and with white to move, where it can
+     *  escape at once. */
+    @Test
+    public void testSearchMatchesPlainSearch() {
+        List<Board> positions = new ArrayList<>(Benchmark.positions());
+        Board b = new Board();
+        for (Square sq : Square.SQUARE_LIST) {
+            b.put(Piece.EMPTY, sq);
+        }
+        b.put(Piece.KING, Square.sq("d4"));
+        b.put(Piece.BLACK, Square.sq("a9"));
+        b.put(Piece.BLACK, Square.sq("i1"));
+        positions.add(new Board(b));
+        b.makeMove(Square.sq("a9"), Square.sq("a8"));
+        positions.add(b);
+        for (Board position : positions) {
+            AI fast = newAI(position.turn()), plain = newAI(position.turn());
+            plain.setPlainSearch(true);
+            int value = plain.searchToDepth(position, 3);
+            assertEquals(value, fast.searchToDepth(position, 3));
+            assertSame(plain.lastFoundMove(), fast.lastFoundMove());
+        }
+        assertTrue(newAI(Piece.BLACK).searchToDepth(positions.get(4), 3)
+                   >= AI.WILL_WIN_VALUE);
+        assertTrue(newAI(Piece.WHITE).searchToDepth(b, 3)
+                   >= AI.WILL_WIN_VALUE);
+    }
+
+    /** Check that the counts an automated player publishes to its
+     *  controller's metrics and move statistics after each search match
+     *  the totals in its SearchStats, and accumulate over searches. */
+    @Test
+    public void testPublishedStats() {
+        PrintStream sink = new PrintStream(new ByteArrayOutputStream());
+        Controller control =
+            new Controller(new NullView(), null,
+                           new TextReporter(sink, sink), new TextPlayer(),
+                           new AI(), false);
+        Metrics metrics = control.metrics();
+        AI ai = new AI(Piece.BLACK, control);
+        long nodes = 0, probes = 0, hits = 0, leaves = 0, maxPly = 0;
+        long[] cutoffs = new long[SearchStats.CUTOFF_SLOTS];
+        Board b = new Board();
+        for (int k = 1; k <= 2; k += 1) {
+            assertNotNull(ai.findMove(b));
+            SearchStats stats = ai.stats();
+            assertTrue(stats.nodes() > 0 && stats.probes() > 0);
+            nodes += stats.nodes();
+            leaves += stats.leaves();
+            probes += stats.probes();
+            hits += stats.hits();
+            maxPly = Math.max(maxPly, stats.maxPly());
+            long allCutoffs = 0;
+            for (int s = 0; s < SearchStats.CUTOFF_SLOTS; s += 1) {
+                cutoffs[s] += stats.cutoffs(s);
+                allCutoffs += stats.cutoffs(s);
+                assertEquals(cutoffs[s],
+                             metrics.get("black.cutoffs." + (s + 1)));
+            }
+            assertTrue(allCutoffs > 0);
+            assertEquals(k, metrics.get("black.searches"));
+            assertEquals(nodes, metrics.get("black.nodes"));
+            assertEquals(leaves, metrics.get("black.leaves"));
+            assertEquals(probes, metrics.get("black.probes"));
+            assertEquals(hits, metrics.get("black.hits"));
+            assertEquals(maxPly, metrics.get("black.maxPly"));
+            assertEquals(k, control.moveStats(Piece.BLACK).moves());
+            assertEquals(nodes, control.moveStats(Piece.BLACK).nodes());
+            assertEquals(0, control.moveStats(Piece.WHITE).moves());
+            b.makeMove(ai.lastFoundMove());
+            b.makeMove(b.legalMoves(Piece.WHITE).get(0));
+        }
+    }
+
+    /** Check pondering when the opponent plays the predicted reply: the
+     *  ponder search has filled the table for the resulting position by
+     *  the time the reply is made, and its report reaches the log, after
+     *  it is stopped, ahead of the note of the hit. */
+    @Test
+    public void testPonderHit() throws InterruptedException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Controller control = ponderingController(log);
+        AI white = startPondering(control);
+        Move predicted = white.prediction();
+        assertNotNull(predicted);
+        Thread.sleep(100);
+        assertFalse(log.toString().contains("(pondering)"));
+        Board b = control.board();
+        b.makeMove(predicted);
+        white.moveMade(predicted);
+        assertNull(white.prediction());
+        String text = log.toString();
+        int report = text.indexOf("White (pondering): depth"),
+            hit = text.indexOf("White: predicted " + predicted + ", hit");
+        assertTrue(text, report >= 0 && hit > report);
+        long entry = white.table().probe(b.positionKey());
+        assertNotEquals(0, entry);
+        assertTrue(TranspositionTable.depth(entry) >= 1);
+        assertTrue(b.isLegal(Move.mv(TranspositionTable.move(entry))));
+        assertTrue(b.isLegal(white.findMove(b)));
+    }
+
+    /** Check pondering when the opponent plays another reply: the ponder
+     *  search is stopped and its prediction dropped, and a new search of
+     *  the actual position finds a legal move. */
+    @Test
+    public void testPonderMiss() {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Controller control = ponderingController(log);
+        AI white = startPondering(control);
+        Move predicted = white.prediction();
+        assertNotNull(predicted);
+        Board b = control.board();
+        Move reply = b.legalMoves(Piece.BLACK).get(0);
+        if (reply == predicted) {
+            reply = b.legalMoves(Piece.BLACK).get(1);
+        }
+        b.makeMove(reply);
+        white.moveMade(reply);
+        assertNull(white.prediction());
+        String text = log.toString();
+        assertTrue(text, text.contains("White: predicted " + predicted
+                                       + ", missed"));
+        int searches = text.split("White: depth", -1).length;
+        assertTrue(b.isLegal(white.findMove(b)));
+        assertEquals(searches + 1,
+                     log.toString().split("White: depth", -1).length);
+    }
+
+    /** Return a controller with pondering on that logs to LOG. */
+    private static Controller ponderingController(OutputStream log) {
+        PrintStream sink = new PrintStream(new ByteArrayOutputStream());
+        Controller control =
+            new Controller(new NullView(), new PrintStream(log, true),
+                           new TextReporter(sink, sink), new TextPlayer(),
+                           new AI(), false);
+        control.setPondering(true);
+        return control;
+    }
+
+    /** Return a white automated player under CONTROL that has made its
+     *  first move on CONTROL's board, after a black move, and has started
+     *  pondering black's reply. */
+    private static AI startPondering(Controller control) {
+        AI white = new AI(Piece.WHITE, control);
+        Board b = control.board();
+        Move first = Move.mv("a4-b");
+        b.makeMove(first);
+        white.moveMade(first);
+        Move move = white.findMove(b);
+        b.makeMove(move);
+        white.moveMade(move);
+        return white;
+    }
+
+    /** Check that the king on the throne is captured only when surrounded
+     *  on all four sides, and that undo restores it. */
+    @Test
+    public void testThroneCapture() {
+        Board b = new Board();
+        for (Square sq : Square.SQUARE_LIST) {
+            b.put(Piece.EMPTY, sq);
+        }
+        b.put(Piece.KING, Board.THRONE);
+        b.put(Piece.BLACK, Board.NTHRONE);
+        b.put(Piece.BLACK, Board.ETHRONE);
+        b.put(Piece.BLACK, Square.sq("a4"));
+        assertFalse(b.isCapture(Square.sq("a4"), Board.STHRONE));
+        b.put(Piece.BLACK, Board.WTHRONE);
+        assertTrue(b.isCapture(Square.sq("a4"), Board.STHRONE));
+        b.makeMove(Square.sq("a4"), Board.STHRONE);
+        assertEquals(Piece.EMPTY, b.get(Board.THRONE));
+        assertEquals(Piece.BLACK, b.winner());
+        b.undo();
+        assertEquals(Piece.KING, b.get(Board.THRONE));
+        assertNull(b.winner());
+    }
+
+    /** Check that isCapture, which does not make the move, agrees with
+     *  whether making each legal move removes a piece, through a series
+     *  of random games. */
+    @Test
+    public void testIsCapture() {
+        Random rand = new Random(67);
+        for (int game = 0; game < 50; game += 1) {
+            Board b = new Board();
+            while (b.winner() == null && b.moveCount() < 200) {
+                String position = b.encodedBoard();
+                long key = b.positionKey();
+                int pieces = b.pieceCount(Piece.WHITE)
+                    + b.pieceCount(Piece.BLACK) + b.pieceCount(Piece.KING);
+                List<Move> moves = b.legalMoves(b.turn());
+                for (Move move : moves) {
+                    boolean capture = b.isCapture(move);
+                    assertEquals(position, b.encodedBoard());
+                    assertEquals(key, b.positionKey());
+                    b.makeMove(move);
+                    int after = b.pieceCount(Piece.WHITE)
+                        + b.pieceCount(Piece.BLACK)
+                        + b.pieceCount(Piece.KING);
+                    assertEquals(move.toString(), pieces != after, capture);
+                    b.undo();
+                }
+                b.makeMove(moves.get(rand.nextInt(moves.size())));
+            }
+        }
+    }
+
+    /** Check that moves are ordered with the transposition table's move
+     *  first, then captures, then killer moves, and then quiet moves by
+     *  history score. */
+    @Test
+    public void testMoveOrdering() {
+        Board b = new Board();
+        for (Square sq : Square.SQUARE_LIST) {
+            b.put(Piece.EMPTY, sq);
+        }
+        b.put(Piece.KING, Board.THRONE);
+        b.put(Piece.WHITE, Square.sq("c3"));
+        b.put(Piece.BLACK, Square.sq("c4"));
+        b.put(Piece.BLACK, Square.sq("a2"));
+        b.put(Piece.BLACK, Square.sq("g7"));
+        int capture = Move.mv("a2-c").index(),
+            killer1 = Move.mv("g7-8").index(),
+            killer2 = Move.mv("g7-6").index(),
+            quiet = Move.mv("g7-f").index(),
+            ttMove = Move.mv("g7-h").index();
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b.legalMoves(Piece.BLACK, moves);
+        MoveOrdering ordering = new MoveOrdering();
+        ordering.order(b, moves, n, 0, TranspositionTable.NO_MOVE);
+        assertEquals(capture, moves[0]);
+        assertTrue(ordering.isCapture(0, 0));
+        assertFalse(ordering.isCapture(0, 1));
+        for (int move : new int[] { quiet, killer1, killer2 }) {
+            int k;
+            for (k = 0; moves[k] != move; k += 1) {
+                assertTrue(k < n);
+            }
+            ordering.cutoff(move, 0, k, move == quiet ? 3 : 1);
+        }
+        ordering.order(b, moves, n, 0, ttMove);
+        assertEquals(ttMove, moves[0]);
+        assertEquals(capture, moves[1]);
+        assertTrue(moves[2] == killer2 && moves[3] == killer1
+                   || moves[2] == killer1 && moves[3] == killer2);
+        assertEquals(quiet, moves[4]);
+        ordering.order(b, moves, n, 1, TranspositionTable.NO_MOVE);
+        assertEquals(capture, moves[0]);
+        assertEquals(quiet, moves[1]);
+    }
+
+    /** Check that transposition table entries read back exactly what was
+     *  stored, over extreme scores (including wins and their negations),
+     *  depths (clamped to the largest that fits), all bound types, and
+     *  extreme move indices. */
+    @Test
+    public void testTableEntries() {
+        TranspositionTable table = new TranspositionTable(4);
+        int[] scores = { 0, 1, -1, AI.WILL_WIN_VALUE, -AI.WILL_WIN_VALUE,
+                         Integer.MAX_VALUE, -Integer.MAX_VALUE,
+                         Integer.MIN_VALUE };
+        int[] depths = { 0, 1, 255, 256, 1000 };
+        int maxMove = Square.NUM_SQUARES * Square.NUM_SQUARES - 1;
+        int[] moves = { TranspositionTable.NO_MOVE, 1, maxMove };
+        int[] bounds = { TranspositionTable.EXACT, TranspositionTable.LOWER,
+                         TranspositionTable.UPPER };
+        long key = -1;
+        for (int score : scores) {
+            for (int depth : depths) {
+                for (int move : moves) {
+                    for (int bound : bounds) {
+                        key = key * 31 + 7;
+                        table.clear();
+                        table.store(key, depth, bound, score, move);
+                        long entry = table.probe(key);
+                        assertNotEquals(0, entry);
+                        assertEquals(score, TranspositionTable.score(entry));
+                        assertEquals(Math.min(depth, 255),
+                                     TranspositionTable.depth(entry));
+                        assertEquals(bound, TranspositionTable.bound(entry));
+                        assertEquals(move, TranspositionTable.move(entry));
+                        assertEquals(0, table.probe(key ^ (1L << 40)));
+                    }
+                }
+            }
+        }
+        assertEquals(TranspositionTable.NO_MOVE, TranspositionTable.move(0));
+        table.clear();
+        assertEquals(0, table.probe(key));
+        table.store(0, 0, TranspositionTable.EXACT, 0,
+                    TranspositionTable.NO_MOVE);
+        assertNotEquals(0, table.probe(0));
+    }
 
+    /** Check the replacement policy of the transposition table: a
+     *  deeper entry from the current search keeps its slot against a
+     *  shallower one, but not against an entry for its own position or
+     *  against any entry once a new search has started; and check that
+     *  an entry whose key and data do not match reads as a miss. */
+    @Test
+    public void testTableReplacement() {
+        TranspositionTable table = new TranspositionTable(4);
+        long deep = 3, shallow = deep + table.size();
+        table.store(deep, 5, TranspositionTable.EXACT, 10, 7);
+        table.store(shallow, 4, TranspositionTable.EXACT, 20, 8);
+        assertEquals(0, table.probe(shallow));
+        assertEquals(10, TranspositionTable.score(table.probe(deep)));
+        table.store(shallow, 5, TranspositionTable.EXACT, 20, 8);
+        assertEquals(0, table.probe(deep));
+        assertEquals(20, TranspositionTable.score(table.probe(shallow)));
+        table.store(shallow, 1, TranspositionTable.LOWER, 30, 9);
+        assertEquals(1, TranspositionTable.depth(table.probe(shallow)));
+        table.store(deep, 9, TranspositionTable.EXACT, 10, 7);
+        table.newSearch();
+        table.store(shallow, 1, TranspositionTable.EXACT, 20, 8);
+        assertEquals(0, table.probe(deep));
+        assertEquals(1, TranspositionTable.depth(table.probe(shallow)));
+        for (int k = 0; k < 200; k += 1) {
+            table.newSearch();
+        }
+        table.store(deep, 2, TranspositionTable.EXACT, 10, 7);
+        assertNotEquals(0, table.probe(deep));
+
+        long key1 = 0x1234_5678_9abcL, key2 = key1 + table.size();
+        TranspositionTable torn = new TranspositionTable(4);
+        torn.store(key1, 3, TranspositionTable.EXACT, 11, 5);
+        long data1 = torn.probe(key1);
+        torn.newSearch();
+        torn.store(key2, 4, TranspositionTable.UPPER, -11, 6);
+        assertNotEquals(0, torn.probe(key2));
+        torn.overwriteData((int) key1 & (torn.size() - 1), data1);
+        assertEquals(0, torn.probe(key1));
+        assertEquals(0, torn.probe(key2));
+    }
+
+    /** Check that tacticalMoves produces exactly the legal moves that
+     *  capture and, for white, the king's moves to an edge or onto a
+     *  square with an open lane to one across its path, through a series
+     *  of random games. */
+    @Test
+    public void testTacticalMoves() {
+        Random rand = new Random(68);
+        int[] buffer = new int[Board.MAX_MOVES];
+        for (int game = 0; game < 50; game += 1) {
+            Board b = new Board();
+            while (b.winner() == null && b.moveCount() < 200) {
+                for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+                    Set<Integer> expected = new HashSet<>();
+                    for (Move move : b.legalMoves(side)) {
+                        if (b.isCapture(move)
+                            || b.get(move.from()) == Piece.KING
+                               && isKingThreat(b, move)) {
+                            expected.add(move.index());
+                        }
+                    }
+                    Set<Integer> found = new HashSet<>();
+                    int n = b.tacticalMoves(side, buffer);
+                    for (int k = 0; k < n; k += 1) {
+                        found.add(buffer[k]);
+                    }
+                    assertEquals(n, found.size());
+                    assertEquals(expected, found);
+                }
+                List<Move> moves = b.legalMoves(b.turn());
+                b.makeMove(moves.get(rand.nextInt(moves.size())));
+            }
+        }
+    }
+
+    /** Return true iff the king's MOVE on B reaches an edge or leaves it
+     *  with an open lane to one across its path. */
+    private static boolean isKingThreat(Board b, Move move) {
+        Square to = move.to();
+        if (to.isEdge()) {
+            return true;
+        }
+        int dir = move.from().direction(to);
+        for (int d = 0; d < 4; d += 1) {
+            if (d % 2 == dir % 2) {
+                continue;
+            }
+            boolean open = true;
+            for (int k = 1; to.rookMove(d, k) != null; k += 1) {
+                open = open && b.get(to.rookMove(d, k)) == Piece.EMPTY;
+            }
+            if (open) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Check that the quiescence search stands pat on the static score
+     *  when it has no tactical moves or no nodes to spend, that a hanging
+     *  capture raises the score at a leaf, that a search limited to one
+     *  node looks exactly one tactical move ahead, and that standing pat
+     *  never lets the side to move do worse than the static score. */
+    @Test
+    public void testQuiescence() {
+        Board b = new Board();
+        for (Square sq : Square.SQUARE_LIST) {
+            b.put(Piece.EMPTY, sq);
+        }
+        b.put(Piece.KING, Board.THRONE);
+        for (Square sq : new Square[] { Board.NTHRONE, Board.ETHRONE,
+                                        Board.STHRONE, Board.WTHRONE,
+                                        Square.sq("f3"), Square.sq("h1") }) {
+            b.put(Piece.WHITE, sq);
+        }
+        b.put(Piece.BLACK, Square.sq("h2"));
+        b.put(Piece.BLACK, Square.sq("a9"));
+        b.makeMove(Square.sq("a9"), Square.sq("a8"));
+        Evaluator eval = new Evaluator();
+        AI white = newAI(Piece.WHITE);
+        int pat = eval.score(b);
+        assertEquals(pat, white.quiescentValue(b, 0));
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b.tacticalMoves(Piece.WHITE, moves);
+        assertEquals(1, n);
+        assertEquals(Move.mv("f3-h").index(), moves[0]);
+        b.makeMove(moves[0]);
+        int captured = eval.score(b);
+        b.undo();
+        assertTrue(captured > pat);
+        assertEquals(captured, white.quiescentValue(b, 1));
+        assertEquals(captured,
+                     white.quiescentValue(b, AI.QUIESCENCE_NODES));
+
+        Random rand = new Random(69);
+        b = new Board();
+        while (b.winner() == null && b.moveCount() < 100) {
+            int sense = b.turn() == Piece.WHITE ? 1 : -1;
+            AI ai = newAI(b.turn());
+            int value = ai.quiescentValue(b, AI.QUIESCENCE_NODES);
+            pat = eval.score(b);
+            assertTrue(sense * value >= sense * pat);
+            int best = pat;
+            n = b.tacticalMoves(b.turn(), moves);
+            for (int k = 0; k < n; k += 1) {
+                b.makeMove(moves[k]);
+                if (b.winner() == null) {
+                    best = sense * Math.max(sense * best,
+                                            sense * eval.score(b));
+                } else {
+                    best = sense * Integer.MAX_VALUE;
+                }
+                b.undo();
+                if (best == sense * Integer.MAX_VALUE) {
+                    break;
+                }
+            }
+            if (Math.abs(best) != Integer.MAX_VALUE) {
+                assertEquals(best, ai.quiescentValue(b, 1));
+            }
+            List<Move> all = b.legalMoves(b.turn());
+            b.makeMove(all.get(rand.nextInt(all.size())));
+        }
+    }
+
+    /** Check that each move is parsed back from its text, as a string and
+     *  as bytes within a larger buffer, and that malformed text is
+     *  rejected. */
+    @Test
+    public void testParseMove() {
+        for (Square sq : Square.SQUARE_LIST) {
+            for (int d = 0; d < 4; d += 1) {
+                for (Move move : Move.ROOK_MOVES[sq.index()][d]) {
+                    String text = move.toString();
+                    assertTrue(Move.isGrammaticalMove(text));
+                    assertSame(move, Move.mv(text));
+                    byte[] buf = ("move " + text + "\n").getBytes();
+                    assertEquals(move.index(), Move.parse(buf, 5, 9));
+                    assertEquals(move.index(),
+                                 Move.parse(new StringBuilder(text), 0, 4));
+                }
+            }
+        }
+        for (String bad : new String[] { "", "e5", "e5-", "e5-j", "e0-e",
+                                         "j5-5", "e5+e", "E5-e", "e5-e1" }) {
+            assertFalse(bad, Move.isGrammaticalMove(bad));
+            assertNull(bad, Move.mv(bad));
+        }
+        assertTrue(Move.isGrammaticalMove("e5-e"));
+        assertNull(Move.mv("e5-e"));
+        assertNull(Move.mv("e5-5"));
+    }
+
+    /** Check that copies and snapshots of a board are unaffected by
+     *  later moves and undos on the original, and vice versa. */
+    @Test
+    public void testCopy() {
+        Random rand = new Random(65);
+        Board b = new Board();
+        Board c = new Board();
+        for (int k = 0; k < 20 && b.winner() == null; k += 1) {
+            List<Move> moves = b.legalMoves(b.turn());
+            b.makeMove(moves.get(rand.nextInt(moves.size())));
+        }
+        c.copy(b);
+        Board s = b.snapshot();
+        String position = b.toString();
+        long key = b.positionKey();
+        b.undo();
+        b.undo();
+        assertEquals(position, c.toString());
+        assertEquals(position, s.toString());
+        s.undo();
+        assertEquals(b.moveCount() + 1, s.moveCount());
+        c.undo();
+        c.undo();
+        assertEquals(b.toString(), c.toString());
+        assertEquals(b.positionKey(), c.positionKey());
+        c.copy(s);
+        s.clearUndo();
+        c.undo();
+        assertEquals(b.toString(), c.toString());
+        assertNotEquals(key, c.positionKey());
+    }
+
+    /** Check the piece counts maintained by the board against a count
+     *  of its squares through a random game and its undoing. */
+    @Test
+    public void testPieceCounts() {
+        Random rand = new Random(66);
+        Board b = new Board();
+        while (b.winner() == null && b.moveCount() < 100) {
+            List<Move> moves = b.legalMoves(b.turn());
+            b.makeMove(moves.get(rand.nextInt(moves.size())));
+            checkPieceCounts(b);
+        }
+        while (b.moveCount() > 0) {
+            b.undo();
+            checkPieceCounts(b);
+        }
+        assertEquals(8, b.pieceCount(Piece.WHITE));
+        assertEquals(16, b.pieceCount(Piece.BLACK));
+    }
+
+    /** Check that B's piece counts match its contents. */
+    private static void checkPieceCounts(Board b) {
+        int[] counts = new int[Piece.values().length];
+        for (Square sq : Square.SQUARE_LIST) {
+            counts[b.get(sq).ordinal()] += 1;
+        }
+        for (Piece p : Piece.values()) {
+            assertEquals(counts[p.ordinal()], b.pieceCount(p));
+        }
+    }
+
+    /** Check that evaluation weights are read from properties, with
+     *  defaults for the rest, and that unknown terms are rejected. */
+    @Test
+    public void testEvaluatorWeights() {
+        Properties weights = new Properties();
+        weights.setProperty("king.lanes", "100");
+        Evaluator eval = new Evaluator(weights);
+        assertEquals(100, eval.weight("king.lanes"));
+        assertEquals(new Evaluator().weight("king.edge"),
+                     eval.weight("king.edge"));
+        weights.setProperty("queen.moves", "1");
+        try {
+            new Evaluator(weights);
+            fail("unknown term accepted");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Check that a book written to a file finds exactly the moves
+     *  written, and that an endgame cache survives saving and
+     *  reloading. */
+    @Test
+    public void testBookFiles() throws IOException {
+        File file = File.createTempFile("tablut", ".book");
+        file.deleteOnExit();
+        long[] keys = { 5, -3, 17, 2 };
+        int[] moves = { 100, 200, 300, 400 };
+        OpeningBook.write(file.getPath(), keys, moves, keys.length);
+        OpeningBook book = OpeningBook.load(file.getPath());
+        assertEquals(4, book.size());
+        for (int k = 0; k < keys.length; k += 1) {
+            assertEquals(moves[k], book.find(keys[k]));
+        }
+        assertEquals(TranspositionTable.NO_MOVE, book.find(4));
+
+        file.delete();
+        EndgameCache cache = new EndgameCache(file.getPath());
+        Board b = new Board();
+        cache.record(b, 500);
+        assertEquals(TranspositionTable.NO_MOVE, cache.find(b.positionKey()));
+        for (Square sq : Board.INITIAL_ATTACKERS) {
+            if (b.pieceCount(Piece.BLACK) > EndgameCache.MAX_ATTACKERS) {
+                b.put(Piece.EMPTY, sq);
+            }
+        }
+        cache.record(b, 500);
+        cache.save();
+        cache = new EndgameCache(file.getPath());
+        assertEquals(500, cache.find(b.positionKey()));
+    }
+
+    /** Check that a win that depends on the move limit is not recorded
+     *  in the endgame cache, while one that does not is, and that a
+     *  recorded move that loses under this game's limit is not played. */
+    @Test
+    public void testEndgameWinsIgnoreLimit() throws IOException {
+        File file = File.createTempFile("tablut", ".endgames");
+        file.delete();
+        file.deleteOnExit();
+        EndgameCache cache = new EndgameCache(file.getPath());
+        PrintStream sink = new PrintStream(new ByteArrayOutputStream());
+        Controller control =
+            new Controller(new NullView(), null,
+                           new TextReporter(sink, sink), new TextPlayer(),
+                           new AI(), false);
+        control.setEndgameCache(cache);
+        AI white = new AI(Piece.WHITE, control),
+            black = new AI(Piece.BLACK, control);
+
+        Board limited = new Board();
+        for (Square sq : Board.INITIAL_ATTACKERS) {
+            if (limited.pieceCount(Piece.BLACK) > EndgameCache.MAX_ATTACKERS) {
+                limited.put(Piece.EMPTY, sq);
+            }
+        }
+        Board free = new Board(limited);
+        limited.setMoveLimit(1);
+        Move first = limited.legalMoves(Piece.BLACK).get(0);
+        limited.makeMove(first);
+        assertNull(limited.winner());
+        white.findMove(limited);
+        assertEquals(0, cache.size());
+
+        Board escape = new Board();
+        for (Square sq : Square.SQUARE_LIST) {
+            escape.put(Piece.EMPTY, sq);
+        }
+        escape.put(Piece.KING, Square.sq("d4"));
+        escape.put(Piece.BLACK, Square.sq("a9"));
+        escape.put(Piece.BLACK, Square.sq("i1"));
+        escape.makeMove(Square.sq("a9"), Square.sq("a8"));
+        Move win = white.findMove(escape);
+        assertEquals(win.index(), cache.find(escape.positionKey()));
+
+        Move reply = limited.legalMoves(Piece.WHITE).get(0);
+        limited.makeMove(reply);
+        free.makeMove(first);
+        free.makeMove(reply);
+        assertNull(limited.winner());
+        assertEquals(free.positionKey(), limited.positionKey());
+        Move stored = free.legalMoves(Piece.BLACK).get(0);
+        cache.record(free, stored.index());
+        assertSame(stored, black.storedMove(free));
+        assertNull(black.storedMove(limited));
+    }
+
+    /** Check that a random game written as a GameRecord and read back
+     *  replays to the same positions, in order and by seeking. */
+    @Test
+    public void testGameRecord() throws IOException {
+        Random rand = new Random(65);
+        Board b = new Board();
+        b.setMoveLimit(60);
+        GameRecord record = new GameRecord();
+        record.setHeader(60, 1234);
+        List<String> positions = new ArrayList<>();
+        positions.add(b.encodedBoard());
+        while (b.winner() == null) {
+            List<Move> moves = b.legalMoves(b.turn());
+            Move move = moves.get(rand.nextInt(moves.size()));
+            b.makeMove(move);
+            record.add(move);
+            positions.add(b.encodedBoard());
+        }
+        File file = File.createTempFile("tablut", ".record");
+        file.deleteOnExit();
+        record.write(file.getPath());
+        record = GameRecord.load(file.getPath());
+        assertEquals(60, record.limit());
+        assertEquals(1234, record.seed());
+        assertEquals(positions.size() - 1, record.size());
+        assertEquals(record.size() / GameRecord.CHECKPOINT_INTERVAL,
+                     record.checkpoints());
+        GameReader reader = new GameReader(record);
+        reader.replay();
+        assertEquals(b.winner(), reader.board().winner());
+        assertEquals(b.positionKey(), reader.board().positionKey());
+        for (int k = 0; k < 50; k += 1) {
+            int ply = rand.nextInt(record.size() + 1);
+            reader.seek(ply);
+            assertEquals(ply, reader.ply());
+            assertEquals(positions.get(ply), reader.board().encodedBoard());
+        }
+    }
+
+    /** Check that a server plays many sessions at once over in-process
+     *  streams, each with its own board: a black move in each session
+     *  gets a reply from its automated white player. */
+    @Test
+    public void testServerSessions() throws Exception {
+        int sessions = 50;
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        List<Future<?>> results = new ArrayList<>();
+        try (Server server = new Server(2, 10)) {
+            for (int k = 0; k < sessions; k += 1) {
+                String moves = k % 2 == 0 ? "a4-b\ndump\nquit\n"
+                    : "d1-c\ndump\nquit\n";
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                outputs.add(output);
+                results.add(server.start(
+                    new ByteArrayInputStream(moves.getBytes()), output));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        for (int k = 0; k < sessions; k += 1) {
+            String text = outputs.get(k).toString();
+            assertTrue(text, text.startsWith(Main.BANNER));
+            assertTrue(text, text.matches("(?s).*\\* [a-i][1-9]-.*"));
+            assertTrue(text, text.contains(k % 2 == 0 ? " 4 - B - -"
+                                           : " 1 - - B - B B"));
+        }
+    }
+
+    /** Check the memory taken by the transposition table of an automated
+     *  player configured as in a server session: none until it searches,
+     *  and then SESSION_TABLE_BYTES, a quarter of a megabyte. */
+    @Test
+    public void testSessionFootprint() {
+        PrintStream sink = new PrintStream(new ByteArrayOutputStream());
+        Controller control =
+            new Controller(new NullView(), null,
+                           new TextReporter(sink, sink), new TextPlayer(),
+                           new AI(), false);
+        control.setTableLogSize(Server.SESSION_TABLE_LOG_SIZE);
+        AI ai = new AI(Piece.WHITE, control);
+        assertNull(ai.table());
+        ai.searchToDepth(new Board(), 1);
+        assertEquals(1 << Server.SESSION_TABLE_LOG_SIZE, ai.table().size());
+        assertEquals(Server.SESSION_TABLE_BYTES, ai.table().bytes());
+        assertEquals(256 * 1024, Server.SESSION_TABLE_BYTES);
+    }
+
+    /** Check that server sessions may not ask for more search threads or
+     *  for pondering. */
+    @Test
+    public void testServerLimits() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Server server = new Server(1, 10)) {
+            server.start(new ByteArrayInputStream(
+                             ("threads 20000 private\nponder on\n"
+                              + "threads 1\nquit\n").getBytes()),
+                         output).get();
+        }
+        String text = output.toString();
+        assertTrue(text, text.contains("at most 1 search threads allowed"));
+        assertTrue(text, text.contains("pondering is not allowed"));
+        assertEquals(text, 2, text.split("Error", -1).length - 1);
+    }
+
+}